@@ -0,0 +1,83 @@
+package Benchmarks;
+
+import Util.ConnectionUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * The BenchmarkDatabase points ConnectionUtil at a database of its own and fills it with a generated dataset, so
+ * benchmarks never touch the database used by the application or its tests.
+ *
+ * The dataset is deterministic: account n is named benchuser{n} with password password{n}, and message n is posted
+ * by account (n mod accounts) + 1 at epoch BASE_EPOCH + n.
+ *
+ * Paths can be overridden with the usual db.* system properties, or with bench.projectDir when the benchmarks are
+ * not run from the benchmarks directory.
+ */
+public class BenchmarkDatabase
+{
+    public static final long BASE_EPOCH = 1669947792L;
+
+    private BenchmarkDatabase()
+    {
+    }
+
+    /**
+     * Recreate the schema and seed it. Must be called before anything else touches ConnectionUtil.
+     *
+     * @param accounts, the number of accounts to create
+     * @param messages, the number of messages to create, spread evenly across the accounts
+     * @throws SQLException if the dataset cannot be inserted
+     */
+    public static void seed(int accounts, int messages) throws SQLException
+    {
+        String projectDir = System.getProperty("bench.projectDir", "..");
+        setIfAbsent("db.url", "jdbc:h2:./target/benchdb/db");
+        setIfAbsent("db.schemaScript", projectDir + "/src/main/resources/SocialMedia.sql");
+        setIfAbsent("db.migrationsDirectory", projectDir + "/src/main/resources/db/migration");
+        setIfAbsent("db.pool.leakThresholdMillis", "0");
+
+        ConnectionUtil.resetTestDatabase();
+        try(Connection connection = ConnectionUtil.getConnection())
+        {
+            connection.setAutoCommit(false);
+            try(PreparedStatement clearMessages = connection.prepareStatement("delete from message");
+                PreparedStatement clearAccounts = connection.prepareStatement("delete from account");
+                PreparedStatement insertAccounts = connection.prepareStatement(
+                        "insert into account (account_id, username, password) " +
+                        "select x, 'benchuser' || x, 'password' || x from system_range(1, ?)");
+                PreparedStatement insertMessages = connection.prepareStatement(
+                        "insert into message (message_id, posted_by, message_text, time_posted_epoch) " +
+                        "select x, mod(x, ?) + 1, 'benchmark message number ' || x, ? + x from system_range(1, ?)"))
+            {
+                clearMessages.executeUpdate();
+                clearAccounts.executeUpdate();
+                insertAccounts.setInt(1, accounts);
+                insertAccounts.executeUpdate();
+                insertMessages.setInt(1, accounts);
+                insertMessages.setLong(2, BASE_EPOCH);
+                insertMessages.setInt(3, messages);
+                insertMessages.executeUpdate();
+            }
+            try(PreparedStatement restartAccounts = connection.prepareStatement(
+                        "alter sequence account_id_seq restart with " + (accounts + 1));
+                PreparedStatement restartMessages = connection.prepareStatement(
+                        "alter sequence message_id_seq restart with " + (messages + 1)))
+            {
+                restartAccounts.executeUpdate();
+                restartMessages.executeUpdate();
+            }
+            connection.commit();
+        }
+    }
+
+    private static void setIfAbsent(String key, String value)
+    {
+        if(System.getProperty(key) == null)
+        {
+            System.setProperty(key, value);
+        }
+    }
+}
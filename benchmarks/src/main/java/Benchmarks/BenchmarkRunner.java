@@ -0,0 +1,31 @@
+package Benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching an optional regular expression and writes a JSON report, so that results from
+ * different commits can be compared. The dataset size can be changed with -Dbench.accounts and -Dbench.messages.
+ *
+ * Usage: java -cp target/benchmarks.jar Benchmarks.BenchmarkRunner [regex] [report file]
+ */
+public class BenchmarkRunner
+{
+    public static void main(String[] args) throws RunnerException
+    {
+        String include = args.length > 0 ? args[0] : "Benchmarks\\..*";
+        String report = args.length > 1 ? args[1] : "target/jmh-result.json";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .param("accounts", System.getProperty("bench.accounts", "1000"))
+                .param("messages", System.getProperty("bench.messages", "100000"))
+                .resultFormat(ResultFormatType.JSON)
+                .result(report)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,79 @@
+package Benchmarks;
+
+import Controller.ExecutionMode;
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A load test comparing the controller's execution modes at a high number of concurrent connections. Each JMH thread
+ * is one client with its own connection, so the 512 threads hold more requests in flight than Jetty's default pool
+ * of 250 platform threads can serve at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(512)
+@Fork(1)
+public class ConcurrencyBenchmark
+{
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"100000"})
+    public int messages;
+
+    @Param({"PLATFORM", "ASYNC"})
+    public ExecutionMode executionMode;
+
+    private Javalin app;
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        BenchmarkDatabase.seed(accounts, messages);
+        app = new SocialMediaController(executionMode).startAPI().start(0);
+        baseUrl = "http://localhost:" + app.port();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        app.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Client
+    {
+        private final SplittableRandom random = new SplittableRandom();
+        private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @Benchmark
+    public int getMessagesByAccount(Client client) throws IOException, InterruptedException
+    {
+        URI uri = URI.create(baseUrl + "/accounts/" + (client.random.nextInt(accounts) + 1) + "/messages");
+        return client.client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding())
+                .statusCode();
+    }
+
+    @Benchmark
+    public int getMessagesPage(Client client) throws IOException, InterruptedException
+    {
+        URI uri = URI.create(baseUrl + "/messages?limit=100&after_id=" + client.random.nextInt(messages));
+        return client.client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding())
+                .statusCode();
+    }
+}
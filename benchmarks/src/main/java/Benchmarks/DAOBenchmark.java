@@ -0,0 +1,107 @@
+package Benchmarks;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures MessageDAO and AccountDAO calls directly against the seeded database, with no caching in front of them.
+ * The store parameter selects the MessageDAO as messages.store does; with columnar, the store is loaded during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DAOBenchmark
+{
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"100000"})
+    public int messages;
+
+    @Param({"database"})
+    public String store;
+
+    private MessageDAO messageDAO;
+    private AccountDAO accountDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        BenchmarkDatabase.seed(accounts, messages);
+        System.setProperty("messages.store", store);
+        messageDAO = MessageDAO.fromSystemProperties();
+        messageDAO.getMessageById(1);
+        accountDAO = new AccountDAO();
+    }
+
+    @State(Scope.Thread)
+    public static class Ids
+    {
+        private final SplittableRandom random = new SplittableRandom(42);
+
+        int messageId(DAOBenchmark benchmark)
+        {
+            return random.nextInt(benchmark.messages) + 1;
+        }
+
+        int accountId(DAOBenchmark benchmark)
+        {
+            return random.nextInt(benchmark.accounts) + 1;
+        }
+    }
+
+    @Benchmark
+    public Message getMessageById(Ids ids)
+    {
+        return messageDAO.getMessageById(ids.messageId(this));
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByUser(Ids ids)
+    {
+        return messageDAO.getMessagesByUser(ids.accountId(this));
+    }
+
+    @Benchmark
+    public List<Message> getMessagesBetween(Ids ids)
+    {
+        long since = BenchmarkDatabase.BASE_EPOCH + ids.messageId(this);
+        return messageDAO.getMessagesBetween(since, since + 100, 100);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesAfterPage(Ids ids)
+    {
+        return messageDAO.getMessagesAfter(ids.messageId(this), 100);
+    }
+
+    @Benchmark
+    public Message insertMessage(Ids ids)
+    {
+        return messageDAO.insertMessage(new Message(ids.accountId(this), "inserted by benchmark", BenchmarkDatabase.BASE_EPOCH));
+    }
+
+    @Benchmark
+    public Account getAccountByUsername(Ids ids)
+    {
+        return accountDAO.getAccountByUsername("benchuser" + ids.accountId(this));
+    }
+
+    @Benchmark
+    public boolean updatePassword(Ids ids)
+    {
+        int id = ids.accountId(this);
+        return accountDAO.updatePassword(id, "password" + id);
+    }
+}
@@ -0,0 +1,115 @@
+package Benchmarks;
+
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.FeedService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures home feed reads and the cost of fan-out on insert as the number of followers of one account grows.
+ *
+ * Every account follows the next followsPerAccount accounts, and accounts 2 to followers + 1 also follow account 1.
+ * Account 1 is pushed to its followers while it has at most feeds.fanOut.maxFollowers (default 1000) of them, and
+ * merged at read time above that. The feeds of up to hotReaders followers of account 1 are read during setup, so
+ * their buffers are in memory and receive pushes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FeedBenchmark
+{
+    @Param({"100001"})
+    public int accounts;
+
+    @Param({"200000"})
+    public int messages;
+
+    @Param({"10"})
+    public int followsPerAccount;
+
+    @Param({"100", "1000", "100000"})
+    public int followers;
+
+    @Param({"1000"})
+    public int hotReaders;
+
+    private MessageService messageService;
+    private FeedService feedService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        BenchmarkDatabase.seed(accounts, messages);
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement follows = connection.prepareStatement("insert into follow (follower_id, followee_id) " +
+                    "select a.x, mod(a.x + k.x - 1, ? - 1) + 2 from system_range(1, ?) a, system_range(1, ?) k " +
+                    "where mod(a.x + k.x - 1, ? - 1) + 2 <> a.x");
+            PreparedStatement celebrity = connection.prepareStatement("insert into follow (follower_id, followee_id) " +
+                    "select x, 1 from system_range(2, ?)"))
+        {
+            follows.setInt(1, accounts);
+            follows.setInt(2, accounts);
+            follows.setInt(3, followsPerAccount);
+            follows.setInt(4, accounts);
+            follows.executeUpdate();
+            celebrity.setInt(1, followers + 1);
+            celebrity.executeUpdate();
+        }
+        AccountService accountService = new AccountService();
+        messageService = new MessageService(new MessageDAO(), accountService);
+        feedService = new FeedService(new FollowDAO(), accountService, messageService);
+        for(int reader = 2; reader < Math.min(followers, hotReaders) + 2; reader++)
+        {
+            feedService.getFeed(reader, 20);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Readers
+    {
+        private final SplittableRandom random = new SplittableRandom(42);
+
+        int hotReader(FeedBenchmark benchmark)
+        {
+            return random.nextInt(Math.min(benchmark.followers, benchmark.hotReaders)) + 2;
+        }
+
+        int author(FeedBenchmark benchmark)
+        {
+            return random.nextInt(benchmark.accounts - 1) + 2;
+        }
+    }
+
+    @Benchmark
+    public List<Message> getFeed(Readers readers)
+    {
+        return feedService.getFeed(readers.hotReader(this), 20);
+    }
+
+    @Benchmark
+    public Message insertByFollowedAccount()
+    {
+        return messageService.insertMessage(new Message(1, "inserted by benchmark", BenchmarkDatabase.BASE_EPOCH + messages));
+    }
+
+    @Benchmark
+    public Message insertByOtherAccount(Readers readers)
+    {
+        return messageService.insertMessage(new Message(readers.author(this), "inserted by benchmark",
+                BenchmarkDatabase.BASE_EPOCH + messages));
+    }
+}
@@ -0,0 +1,113 @@
+package Benchmarks;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end-to-end latency of the Javalin endpoints over loopback HTTP, with the application started on a free
+ * port against the seeded database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpBenchmark
+{
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"100000"})
+    public int messages;
+
+    private Javalin app;
+    private HttpClient client;
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        BenchmarkDatabase.seed(accounts, messages);
+        app = new SocialMediaController().startAPI().start(0);
+        baseUrl = "http://localhost:" + app.port();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        app.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Ids
+    {
+        private final SplittableRandom random = new SplittableRandom(42);
+
+        int messageId(HttpBenchmark benchmark)
+        {
+            return random.nextInt(benchmark.messages) + 1;
+        }
+
+        int accountId(HttpBenchmark benchmark)
+        {
+            return random.nextInt(benchmark.accounts) + 1;
+        }
+    }
+
+    @Benchmark
+    public String getMessageById(Ids ids) throws IOException, InterruptedException
+    {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + ids.messageId(this))).build());
+    }
+
+    @Benchmark
+    public String getMessagesByAccount(Ids ids) throws IOException, InterruptedException
+    {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/accounts/" + ids.accountId(this) + "/messages")).build());
+    }
+
+    @Benchmark
+    public String getMessagesPage(Ids ids) throws IOException, InterruptedException
+    {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/messages?limit=100&after_id=" + ids.messageId(this))).build());
+    }
+
+    @Benchmark
+    public String postMessage(Ids ids) throws IOException, InterruptedException
+    {
+        String body = "{\"posted_by\":" + ids.accountId(this) + ",\"message_text\":\"posted by benchmark\"," +
+                "\"time_posted_epoch\":" + BenchmarkDatabase.BASE_EPOCH + "}";
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/messages"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build());
+    }
+
+    @Benchmark
+    public String login(Ids ids) throws IOException, InterruptedException
+    {
+        int id = ids.accountId(this);
+        String body = "{\"username\":\"benchuser" + id + "\",\"password\":\"password" + id + "\"}";
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build());
+    }
+
+    private String send(HttpRequest request) throws IOException, InterruptedException
+    {
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,56 @@
+package Benchmarks;
+
+import Model.Message;
+import Util.JsonCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures JSON serialization and deserialization of a Message through the shared JsonCodec, against building a new
+ * ObjectMapper for every call as the controller used to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark
+{
+    private final Message message = new Message(12345, 42, "a message of roughly average length for the benchmark", BenchmarkDatabase.BASE_EPOCH);
+    private final byte[] json = ("{\"message_id\":12345,\"posted_by\":42," +
+            "\"message_text\":\"a message of roughly average length for the benchmark\"," +
+            "\"time_posted_epoch\":1669947792}").getBytes(StandardCharsets.UTF_8);
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+    @Benchmark
+    public int writeSharedCodec() throws IOException
+    {
+        out.reset();
+        JsonCodec.write(out, JsonCodec.MESSAGE_WRITER, message);
+        return out.size();
+    }
+
+    @Benchmark
+    public String writeNewObjectMapper() throws IOException
+    {
+        return new ObjectMapper().writeValueAsString(message);
+    }
+
+    @Benchmark
+    public Message readSharedCodec() throws IOException
+    {
+        return JsonCodec.MESSAGE_READER.readValue(json);
+    }
+
+    @Benchmark
+    public Message readNewObjectMapper() throws IOException
+    {
+        return new ObjectMapper().readValue(json, Message.class);
+    }
+}
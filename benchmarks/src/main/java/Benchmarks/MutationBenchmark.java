@@ -0,0 +1,128 @@
+package Benchmarks;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single statement update and delete in MessageDAO, which read the changed row back from the FINAL TABLE
+ * or OLD TABLE of the change itself, against the select, change, select sequence they replaced.
+ *
+ * Every delete benchmark first inserts the message it deletes, so both delete variants include the same insert.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MutationBenchmark
+{
+    private static final String SELECT_SQL = "select * from message where message_id = ?";
+
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"100000"})
+    public int messages;
+
+    private MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        BenchmarkDatabase.seed(accounts, messages);
+        messageDAO = new MessageDAO();
+    }
+
+    @State(Scope.Thread)
+    public static class Ids
+    {
+        private final SplittableRandom random = new SplittableRandom(42);
+
+        int messageId(MutationBenchmark benchmark)
+        {
+            return random.nextInt(benchmark.messages) + 1;
+        }
+
+        int accountId(MutationBenchmark benchmark)
+        {
+            return random.nextInt(benchmark.accounts) + 1;
+        }
+    }
+
+    @Benchmark
+    public Message updateReturning(Ids ids)
+    {
+        return messageDAO.updateMessage(ids.messageId(this), new Message(0, "updated by benchmark", 0));
+    }
+
+    @Benchmark
+    public Message updateSelectUpdateSelect(Ids ids) throws SQLException
+    {
+        int id = ids.messageId(this);
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement select = connection.prepareStatement(SELECT_SQL);
+            PreparedStatement update = connection.prepareStatement(
+                    "update message set message_text = ? where message_id = ?"))
+        {
+            if(selectMessage(select, id) == null)
+            {
+                return null;
+            }
+            update.setString(1, "updated by benchmark");
+            update.setInt(2, id);
+            update.executeUpdate();
+            return selectMessage(select, id);
+        }
+    }
+
+    @Benchmark
+    public Message insertThenDeleteReturning(Ids ids)
+    {
+        Message inserted = insert(ids);
+        return messageDAO.deleteMessageById(inserted.getMessage_id());
+    }
+
+    @Benchmark
+    public Message insertThenSelectDelete(Ids ids) throws SQLException
+    {
+        Message inserted = insert(ids);
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement select = connection.prepareStatement(SELECT_SQL);
+            PreparedStatement delete = connection.prepareStatement("delete from message where message_id = ?"))
+        {
+            Message message = selectMessage(select, inserted.getMessage_id());
+            delete.setInt(1, inserted.getMessage_id());
+            delete.executeUpdate();
+            return message;
+        }
+    }
+
+    private Message insert(Ids ids)
+    {
+        return messageDAO.insertMessage(new Message(ids.accountId(this), "deleted by benchmark", BenchmarkDatabase.BASE_EPOCH));
+    }
+
+    private static Message selectMessage(PreparedStatement select, int id) throws SQLException
+    {
+        select.setInt(1, id);
+        try(ResultSet rs = select.executeQuery())
+        {
+            if(rs.next())
+            {
+                return new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                        rs.getString("message_text"), rs.getLong("time_posted_epoch"));
+            }
+        }
+        return null;
+    }
+}
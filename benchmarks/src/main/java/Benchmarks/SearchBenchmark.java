@@ -0,0 +1,67 @@
+package Benchmarks;
+
+import Model.Message;
+import Service.MessageSearchIndex;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures search latency over a large message table. The seeded text is rewritten so that terms occur at three
+ * frequencies: word{n} in a tenth of the messages, term{n} in one in a thousand, and tag{n} in about ten messages.
+ * The index is built during setup, so only queries are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SearchBenchmark
+{
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"1000000"})
+    public int messages;
+
+    @Param({"word3", "term42", "tag4242", "word3 term42"})
+    public String query;
+
+    private MessageService messageService;
+    private MessageSearchIndex searchIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        BenchmarkDatabase.seed(accounts, messages);
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement("update message set message_text = " +
+                    "'word' || mod(message_id, 10) || ' term' || mod(message_id, 1000) || " +
+                    "' tag' || mod(message_id * 31, 100000)"))
+        {
+            preparedStatement.executeUpdate();
+        }
+        messageService = new MessageService();
+        messageService.searchMessages("warmup", 0, 1);
+        searchIndex = messageService.getSearchIndex();
+    }
+
+    @Benchmark
+    public int[] searchIndex()
+    {
+        return searchIndex.search(query, 0, 20);
+    }
+
+    @Benchmark
+    public List<Message> searchMessages()
+    {
+        return messageService.searchMessages(query, 0, 20);
+    }
+}
@@ -0,0 +1,99 @@
+package Benchmarks;
+
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures MessageService and AccountService flows, including validation and any caching the services do. The
+ * message ids and accounts read are drawn from a hot set so that caches reach a steady state during warmup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark
+{
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"100000"})
+    public int messages;
+
+    @Param({"1000"})
+    public int hotSetSize;
+
+    private MessageService messageService;
+    private AccountService accountService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException
+    {
+        BenchmarkDatabase.seed(accounts, messages);
+        accountService = new AccountService();
+        messageService = new MessageService(new MessageDAO(), accountService);
+    }
+
+    @State(Scope.Thread)
+    public static class Ids
+    {
+        private final SplittableRandom random = new SplittableRandom(42);
+
+        int hotMessageId(ServiceBenchmark benchmark)
+        {
+            return random.nextInt(Math.min(benchmark.hotSetSize, benchmark.messages)) + 1;
+        }
+
+        int accountId(ServiceBenchmark benchmark)
+        {
+            return random.nextInt(benchmark.accounts) + 1;
+        }
+    }
+
+    @Benchmark
+    public Message getMessageById(Ids ids)
+    {
+        return messageService.getMessageById(ids.hotMessageId(this));
+    }
+
+    @Benchmark
+    public List<Message> getAllMessagesFromUser(Ids ids)
+    {
+        return messageService.getAllMessagesFromUser(ids.accountId(this));
+    }
+
+    @Benchmark
+    public Message insertMessage(Ids ids)
+    {
+        return messageService.insertMessage(new Message(ids.accountId(this), "inserted by benchmark", BenchmarkDatabase.BASE_EPOCH));
+    }
+
+    @Benchmark
+    public boolean accountExists(Ids ids)
+    {
+        return accountService.accountExists(ids.accountId(this));
+    }
+
+    @Benchmark
+    public Message updateMessage(Ids ids)
+    {
+        return messageService.updateMessage(ids.hotMessageId(this), new Message(0, "updated by benchmark", 0));
+    }
+
+    @Benchmark
+    public Account loginAccount(Ids ids)
+    {
+        int id = ids.accountId(this);
+        return accountService.loginAccount(new Account("benchuser" + id, "password" + id));
+    }
+}
@@ -0,0 +1,26 @@
+package Controller;
+
+/**
+ * How the SocialMediaController runs its handlers. The mode is chosen with the app.executionMode system property.
+ */
+public enum ExecutionMode {
+    /**
+     * Handlers run on Jetty's pool of platform threads, so every request in flight holds a thread while it waits on
+     * the database.
+     */
+    PLATFORM,
+    /**
+     * Handlers are handed to a dedicated, bounded executor with context.future(), releasing the Jetty thread at once.
+     * When the executor's queue is full the request is answered with 503 instead of queuing further.
+     */
+    ASYNC;
+
+    /**
+     * @return the mode named by the app.executionMode system property, case insensitive, or PLATFORM if it is not set
+     * @throws IllegalArgumentException if the property does not name a mode
+     */
+    public static ExecutionMode fromSystemProperty()
+    {
+        return valueOf(System.getProperty("app.executionMode", PLATFORM.name()).trim().toUpperCase());
+    }
+}
@@ -1,15 +1,49 @@
 package Controller;
 
+import DAO.ColumnarMessageDAO;
+import DAO.FollowDAO;
+import DAO.MessageDAO;
 import Model.Account;
+import Model.BatchItemResult;
 import Model.Message;
 import Service.AccountService;
+import Service.FeedService;
+import Service.MessageLog;
+import Service.MessageResponseCache;
+import Service.MessageResponseCache.EncodedMessage;
+import Service.MessageSearchIndex;
 import Service.MessageService;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import Service.MessageWriteBehind;
+import Service.TimelineCache;
+import Service.UsernameIndex;
+import Util.BoundedCache;
+import Util.ConnectionProvider;
+import Util.ConnectionUtil;
+import Util.BoundedExecutor;
+import Util.JsonCodec;
+import Util.Metrics;
+import Util.PooledConnectionProvider;
+import Util.SessionTokens;
+import Util.StatementCache;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
-
+import io.javalin.http.Handler;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import io.javalin.http.UnauthorizedResponse;
+import io.javalin.json.JavalinJackson;
+import io.javalin.util.ConcurrencyUtil;
+import org.eclipse.jetty.server.Response;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -17,13 +51,87 @@ import java.util.List;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    /**
+     * The largest page of messages that may be requested at once
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * The largest number of messages that may be created by one batch request
+     */
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("messages.batch.maxSize", 10000);
+    /**
+     * The number of search results returned when no limit is given
+     */
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    /**
+     * The number of feed messages returned when no limit is given
+     */
+    private static final int DEFAULT_FEED_LIMIT = 20;
+    /**
+     * The response header holding the cursor for the next page of messages
+     */
+    private static final String NEXT_CURSOR_HEADER = "X-Next-After-Id";
+    /**
+     * The route label under which requests that matched no endpoint are recorded
+     */
+    private static final String UNMATCHED_ROUTE = "unmatched";
+    /**
+     * The context attribute holding the System.nanoTime() at which a request started
+     */
+    private static final String START_TIME_ATTRIBUTE = "metrics.startNanos";
+    /**
+     * The response header holding the session token issued by a successful login
+     */
+    private static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+    /**
+     * The context attribute holding the account_id of the caller, when the request carried a valid session token
+     */
+    private static final String CALLER_ATTRIBUTE = "session.accountId";
+
+    static
+    {
+        // Javalin would otherwise run Jetty on virtual threads whenever the JDK has them. The flag is process wide, so
+        // it is set once here rather than by each controller
+        ConcurrencyUtil.INSTANCE.setUseLoom(false);
+    }
+
     AccountService accountService;
     MessageService messageService;
+    /**
+     * Holds the encoded bodies of GET /messages/{message_id}, configured by the messages.responseCache.* system
+     * properties
+     */
+    MessageResponseCache messageResponseCache;
+    /**
+     * Keeps the follow graph and the home feeds, configured by the feeds.* system properties
+     */
+    FeedService feedService;
+    /**
+     * Issues session tokens on login and verifies the ones sent back, configured by the sessions.* system properties
+     */
+    SessionTokens sessionTokens;
+    ExecutionMode executionMode;
+    /**
+     * The executor that handlers run on in ASYNC mode, created by startAPI() and shut down when the server stops
+     */
+    ExecutorService handlerExecutor;
 
     public SocialMediaController()
+    {
+        this(ExecutionMode.fromSystemProperty());
+    }
+
+    /**
+     * @param executionMode, how the handlers of the app returned by startAPI() are run
+     */
+    public SocialMediaController(ExecutionMode executionMode)
     {
         this.accountService = new AccountService();
-        this.messageService = new MessageService();
+        this.messageService = new MessageService(MessageDAO.fromSystemProperties(), accountService);
+        this.messageResponseCache = new MessageResponseCache(messageService);
+        this.feedService = new FeedService(new FollowDAO(), accountService, messageService);
+        this.sessionTokens = SessionTokens.fromSystemProperties();
+        this.executionMode = executionMode;
     }
 
     /**
@@ -32,38 +140,91 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
-        app.post("/register", this::postCreateAccountHandler);
-        app.post("/login", this::postLoginAccountHandler);
-        app.post("/messages", this::postCreateMessageHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("messages/{message_id}", this::getMessageByIdHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageByIdHandler);
-        app.patch("/messages/{message_id}", this::patchMessageByIdHandler);
-        app.get("/accounts/{account_id}/messages", this::getAllMessagesByAccountHandler);
+        Javalin app = Javalin.create(config -> config.jsonMapper(new JavalinJackson(JsonCodec.MAPPER)));
+        if(executionMode == ExecutionMode.ASYNC)
+        {
+            handlerExecutor = BoundedExecutor.createForConnectionPool("handler");
+            app.events(event -> event.serverStopped(handlerExecutor::shutdown));
+        }
+        app.events(event -> event.serverStopped(messageService::close));
+        app.events(event -> event.serverStopped(accountService::close));
+        app.exception(RejectedExecutionException.class, (e, context) -> context.status(HttpStatus.SERVICE_UNAVAILABLE));
+        app.before(this::startTimerHandler);
+        app.before(this::authenticateHandler);
+        app.after(this::recordMetricsHandler);
+        registerGauges();
+        app.post("/register", dispatch(this::postCreateAccountHandler));
+        app.post("/login", dispatch(this::postLoginAccountHandler));
+        app.post("/messages", dispatch(this::postCreateMessageHandler));
+        app.post("/messages/batch", dispatch(this::postCreateMessageBatchHandler));
+        app.get("/messages", dispatch(this::getAllMessagesHandler));
+        app.get("/messages/search", dispatch(this::getSearchMessagesHandler));
+        app.get("messages/{message_id}", dispatch(this::getMessageByIdHandler));
+        app.delete("/messages/{message_id}", dispatch(this::deleteMessageByIdHandler));
+        app.patch("/messages/{message_id}", dispatch(this::patchMessageByIdHandler));
+        app.get("/accounts/{account_id}/messages", dispatch(this::getAllMessagesByAccountHandler));
+        app.get("/accounts/{account_id}/following", dispatch(this::getFollowingHandler));
+        app.post("/accounts/{account_id}/following/{followee_id}", dispatch(this::postFollowHandler));
+        app.delete("/accounts/{account_id}/following/{followee_id}", dispatch(this::deleteFollowHandler));
+        app.get("/accounts/{account_id}/feed", dispatch(this::getFeedHandler));
+
+        app.get("/metrics", this::getMetricsHandler);
 
         app.get("example-endpoint", this::exampleHandler);
 
         return app;
     }
 
+    /**
+     * Wrap a handler that blocks on the database according to the execution mode. In ASYNC mode the handler is run on
+     * the handler executor and Javalin completes the response once it finishes; an exception it throws is passed to
+     * the exception handlers as if it had been thrown on the request thread. If the executor is saturated the
+     * RejectedExecutionException is thrown straight away and the request is answered with 503.
+     *
+     * @param handler a handler which blocks on the database
+     * @return the handler to register for the route
+     */
+    private Handler dispatch(Handler handler)
+    {
+        if(executionMode != ExecutionMode.ASYNC)
+        {
+            return handler;
+        }
+        return context -> {
+            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+                try
+                {
+                    handler.handle(context);
+                }
+                catch(RuntimeException e)
+                {
+                    throw e;
+                }
+                catch(Exception e)
+                {
+                    throw new CompletionException(e);
+                }
+            }, handlerExecutor);
+            context.future(() -> future);
+        };
+    }
+
     /**
      * Handler to post a new account
-     * The ObjectMapper will automatically convert the JSON of the POST request into an Account object
+     * The shared JsonCodec will convert the JSON of the POST request into an Account object
      * If AccountService returns a null account, the API will return a 400 message
      * 
      * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method. 
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object
+     * @throws IOException will be thrown if there is an issue converting between JSON and an object
      */
-    private void postCreateAccountHandler(Context context) throws JsonProcessingException
+    private void postCreateAccountHandler(Context context) throws IOException
     {
-        ObjectMapper om = new ObjectMapper();
-        Account account = om.readValue(context.body(), Account.class);
+        Account account = JsonCodec.readAccount(context.bodyInputStream());
         Account addedAccount = accountService.createAccount(account);
         if(addedAccount != null)
         {
-            context.json(om.writeValueAsString(addedAccount));
+            writeJson(context, JsonCodec.ACCOUNT_WRITER, addedAccount);
         }
         else
         {
@@ -73,21 +234,23 @@ public class SocialMediaController {
 
     /**
      * Handler to login to an account
-     * The ObjectMapper will automatically convert the JSON of the POST request into an Account object
+     * The shared JsonCodec will convert the JSON of the POST request into an Account object
      * If AccountService returns a null account, the API will return a 401 message
+     * On success the X-Session-Token header holds a session token, which may be sent back on later requests as
+     * "Authorization: Bearer token"
      * 
      * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method. 
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object
+     * @throws IOException will be thrown if there is an issue converting between JSON and an object
      */
-    private void postLoginAccountHandler(Context context) throws JsonProcessingException
+    private void postLoginAccountHandler(Context context) throws IOException
     {
-        ObjectMapper om = new ObjectMapper();
-        Account account = om.readValue(context.body(), Account.class);
+        Account account = JsonCodec.readAccount(context.bodyInputStream());
         Account loginToAccount = accountService.loginAccount(account);
         if(loginToAccount != null)
         {
-            context.json(om.writeValueAsString(loginToAccount));
+            context.header(SESSION_TOKEN_HEADER, sessionTokens.issue(loginToAccount.getAccount_id()));
+            writeJson(context, JsonCodec.ACCOUNT_WRITER, loginToAccount);
         }
         else
         {
@@ -97,21 +260,28 @@ public class SocialMediaController {
 
     /**
      * Handler to post a new message
-     * The ObjectMapper will automatically convert the JSON of the POST request into a Message object
+     * The shared JsonCodec will convert the JSON of the POST request into a Message object
      * If MessageService returns a null message, the API will return a 400 message
+     * If the request carries a session token, posted_by must be the caller's account, or the API will return a 403
+     * message; the author then needs no database check
      * 
      * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method. 
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object
+     * @throws IOException will be thrown if there is an issue converting between JSON and an object
      */
-    private void postCreateMessageHandler(Context context) throws JsonProcessingException
+    private void postCreateMessageHandler(Context context) throws IOException
     {
-        ObjectMapper om = new ObjectMapper();
-        Message message = om.readValue(context.body(), Message.class);
-        Message addedMessage = messageService.insertMessage(message);
+        Message message = JsonCodec.readMessage(context.bodyInputStream());
+        Integer caller = context.attribute(CALLER_ATTRIBUTE);
+        if(caller != null && caller != message.getPosted_by())
+        {
+            context.status(403);
+            return;
+        }
+        Message addedMessage = messageService.insertMessage(message, caller != null);
         if(addedMessage != null)
         {
-            context.json(om.writeValueAsString(addedMessage));
+            writeJson(context, JsonCodec.MESSAGE_WRITER, addedMessage);
         }
         else
         {
@@ -119,50 +289,210 @@ public class SocialMediaController {
         }
     }
 
+    /**
+     * Handler to post many new messages at once
+     * The request body is a JSON array of messages. The response is a JSON array with one result per message, in the
+     * same order, holding either the inserted message with its message_id or the reason it was rejected.
+     * If the body is not an array, or holds more than the maximum batch size, the API will return a 400 message
+     * 
+     * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.post method. 
+     * @throws IOException will be thrown if there is an issue converting between JSON and an object
+     */
+    private void postCreateMessageBatchHandler(Context context) throws IOException
+    {
+        List<Message> messages = JsonCodec.readMessageList(context.bodyInputStream());
+        if(messages == null || messages.size() > MAX_BATCH_SIZE)
+        {
+            context.status(400);
+            return;
+        }
+        List<BatchItemResult> results = messageService.insertMessages(messages);
+        writeJson(context, JsonCodec.BATCH_RESULT_LIST_WRITER, results);
+    }
+
     /**
      * Handler to retrieve all messages
+     * If a limit query parameter is given, one page of at most limit messages following after_id is returned, and
+     * the X-Next-After-Id header holds the cursor for the next page when more messages may follow. Otherwise every
+     * message following after_id is streamed into the response as it is read from the database.
+     * If a since or until query parameter is given, the messages posted from since up to but not including until are
+     * returned instead, oldest first, and limit caps their number; after_id may not be combined with them
      * 
      * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.put method.
+     * @throws IOException will be thrown if there is an issue converting the messages into JSON
+     */
+    private void getAllMessagesHandler(Context context) throws IOException
+    {
+        if(context.queryParam("since") != null || context.queryParam("until") != null)
+        {
+            if(context.queryParam("after_id") != null)
+            {
+                context.status(400);
+                return;
+            }
+            int limit = context.queryParamAsClass("limit", Integer.class)
+                    .check(l -> l > 0 && l <= MAX_PAGE_SIZE, "limit must be between 1 and " + MAX_PAGE_SIZE)
+                    .getOrDefault(Integer.MAX_VALUE);
+            writeJson(context, JsonCodec.MESSAGE_LIST_WRITER,
+                    messageService.getMessagesBetween(since(context), until(context), limit));
+            return;
+        }
+        int after_id = context.queryParamAsClass("after_id", Integer.class)
+                .check(id -> id >= 0, "after_id must not be negative")
+                .getOrDefault(0);
+        if(context.queryParam("limit") != null)
+        {
+            int limit = context.queryParamAsClass("limit", Integer.class)
+                    .check(l -> l > 0 && l <= MAX_PAGE_SIZE, "limit must be between 1 and " + MAX_PAGE_SIZE)
+                    .get();
+            List<Message> messages = messageService.getMessagesAfter(after_id, limit);
+            if(messages.size() == limit)
+            {
+                context.header(NEXT_CURSOR_HEADER, String.valueOf(messages.get(limit - 1).getMessage_id()));
+            }
+            writeJson(context, JsonCodec.MESSAGE_LIST_WRITER, messages);
+        }
+        else
+        {
+            streamMessagesAfter(context, after_id);
+        }
+    }
+
+    /**
+     * Stream every message following a cursor into the response as a JSON array. If the messages cannot all be read
+     * and nothing has been sent yet, the API will return a 500 message instead. Once part of the array has been sent
+     * the status can no longer change, so the connection is aborted rather than ending the array early, and the client
+     * sees a broken response instead of a short one.
+     *
+     * @param context the context of the request being answered
+     * @param after_id only messages with a greater message_id are streamed
+     * @throws IOException will be thrown if there is an issue writing the messages to the response
      */
-    private void getAllMessagesHandler(Context context)
+    private void streamMessagesAfter(Context context, int after_id) throws IOException
     {
-        List<Message> messages = messageService.getAllMessages();
-        context.json(messages);
+        context.contentType(ContentType.APPLICATION_JSON);
+        JsonGenerator generator = JsonCodec.MAPPER.createGenerator(context.outputStream());
+        boolean streamed;
+        try
+        {
+            generator.writeStartArray();
+            streamed = messageService.streamMessagesAfter(after_id, message -> {
+                try
+                {
+                    JsonCodec.MESSAGE_WRITER.writeValue(generator, message);
+                }
+                catch(IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch(UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+        if(streamed)
+        {
+            generator.writeEndArray();
+            generator.close();
+        }
+        else if(!context.res().isCommitted())
+        {
+            // the generator is dropped without being flushed, so its buffered part of the array is never sent
+            context.res().resetBuffer();
+            context.status(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        else if(context.res() instanceof Response)
+        {
+            ((Response) context.res()).getHttpChannel().abort(new IOException("Messages could not all be read"));
+        }
+        else
+        {
+            throw new IOException("Messages could not all be read");
+        }
+    }
+
+    /**
+     * Handler to search messages by their text
+     * The q query parameter holds the text to search for; messages holding every word of it are returned, best match
+     * first. Results are paged with offset (default 0) and limit (default 20)
+     * If q holds no words, or offset or limit is out of range, the API will return a 400 message
+     * If the search index cannot be built, the API will return a 503 message
+     * 
+     * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.get method. 
+     * @throws IOException will be thrown if there is an issue converting between JSON and an object
+     */
+    private void getSearchMessagesHandler(Context context) throws IOException
+    {
+        String query = context.queryParamAsClass("q", String.class)
+                .check(q -> q.chars().anyMatch(Character::isLetterOrDigit), "q must hold at least one word")
+                .get();
+        int offset = context.queryParamAsClass("offset", Integer.class)
+                .check(o -> o >= 0, "offset must not be negative")
+                .getOrDefault(0);
+        int limit = context.queryParamAsClass("limit", Integer.class)
+                .check(l -> l > 0 && l <= MAX_PAGE_SIZE, "limit must be between 1 and " + MAX_PAGE_SIZE)
+                .getOrDefault(DEFAULT_SEARCH_LIMIT);
+        List<Message> messages = messageService.searchMessages(query, offset, limit);
+        if(messages == null)
+        {
+            context.status(HttpStatus.SERVICE_UNAVAILABLE);
+            return;
+        }
+        writeJson(context, JsonCodec.MESSAGE_LIST_WRITER, messages);
     }
 
     /**
      * Handler to get a message by its id
+     * The body comes already encoded from the response cache and is sent with an ETag. If the request's If-None-Match
+     * header names that ETag, the API will return a 304 message with no body.
      * 
      * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.put method.
+     * @throws IOException will be thrown if there is an issue writing the message to the response
      */
-    private void getMessageByIdHandler(Context context)
+    private void getMessageByIdHandler(Context context) throws IOException
     {
         int message_id = Integer.parseInt(context.pathParam("message_id"));
-        Message message = messageService.getMessageById(message_id);
+        EncodedMessage message = messageResponseCache.get(message_id);
         if(message != null)
         {
-            context.json(message);
+            context.header(Header.ETAG, message.getEtag());
+            if(message.matches(context.header(Header.IF_NONE_MATCH)))
+            {
+                context.status(HttpStatus.NOT_MODIFIED);
+                return;
+            }
+            context.contentType(ContentType.APPLICATION_JSON);
+            context.outputStream().write(message.getJson());
         }
     }
 
     /**
-     * Handler to delete a message by its id\
+     * Handler to delete a message by its id
      * If MessageService returns a null message, the API will return a 200 message
+     * If the request carries a session token, the message must have been posted by the caller, or the API will return
+     * a 403 message
      * 
      * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.delete method
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object
+     * @throws IOException will be thrown if there is an issue converting between JSON and an object
      */
-    private void deleteMessageByIdHandler(Context context) throws JsonProcessingException
+    private void deleteMessageByIdHandler(Context context) throws IOException
     {   
-        ObjectMapper om = new ObjectMapper();
         int message_id = Integer.parseInt(context.pathParam("message_id"));
-        Message message = messageService.getMessageById(message_id);
+        if(!isAuthorOrAnonymous(context, message_id))
+        {
+            context.status(403);
+            return;
+        }
+        Message message = messageService.deleteMessage(message_id);
         if(message != null)
         {
-            context.json(om.writeValueAsString(message));
+            writeJson(context, JsonCodec.MESSAGE_WRITER, message);
         }
         else
         {
@@ -173,20 +503,26 @@ public class SocialMediaController {
     /**
      * Handler to update a message
      * If MessageService returns a null message, the API will return a 400 message
+     * If the request carries a session token, the message must have been posted by the caller, or the API will return
+     * a 403 message
      * 
      * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.patch method
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object
+     * @throws IOException will be thrown if there is an issue converting between JSON and an object
      */
-    private void patchMessageByIdHandler(Context context) throws JsonProcessingException
+    private void patchMessageByIdHandler(Context context) throws IOException
     {
-        ObjectMapper om = new ObjectMapper();
-        Message message = om.readValue(context.body(), Message.class);
+        Message message = JsonCodec.readMessage(context.bodyInputStream());
         int message_id = Integer.parseInt(context.pathParam("message_id"));
+        if(!isAuthorOrAnonymous(context, message_id))
+        {
+            context.status(403);
+            return;
+        }
         Message updatedMessage = messageService.updateMessage(message_id, message);
         if(updatedMessage != null)
         {
-            context.json(om.writeValueAsString(updatedMessage));
+            writeJson(context, JsonCodec.MESSAGE_WRITER, updatedMessage);
         }
         else
         {
@@ -196,14 +532,309 @@ public class SocialMediaController {
 
     /**
      * Handler to get all messages from an account
+     * If a since or until query parameter is given, only the messages posted from since up to but not including until
+     * are returned, oldest first
      * 
      * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.put method
+     * @throws IOException will be thrown if there is an issue converting the messages into JSON
+     */
+    private void getAllMessagesByAccountHandler(Context context) throws IOException
+    {
+        int account_id = Integer.parseInt(context.pathParam("account_id"));
+        if(context.queryParam("since") != null || context.queryParam("until") != null)
+        {
+            writeJson(context, JsonCodec.MESSAGE_LIST_WRITER,
+                    messageService.getMessagesFromUserBetween(account_id, since(context), until(context)));
+            return;
+        }
+        writeJson(context, JsonCodec.MESSAGE_LIST_WRITER, messageService.getAllMessagesFromUser(account_id));
+    }
+
+    /**
+     * Handler to get the ids of the accounts an account follows, in ascending order
+     *
+     * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.get method
+     * @throws IOException will be thrown if there is an issue converting the ids into JSON
+     */
+    private void getFollowingHandler(Context context) throws IOException
+    {
+        List<Integer> following = feedService.getFollowing(Integer.parseInt(context.pathParam("account_id")));
+        if(following == null)
+        {
+            context.status(HttpStatus.SERVICE_UNAVAILABLE);
+            return;
+        }
+        writeJson(context, JsonCodec.ID_LIST_WRITER, following);
+    }
+
+    /**
+     * Handler to make one account follow another
+     * If the accounts are the same, either does not exist or the follow could not be stored, the API will return a
+     * 400 message. If the request
+     * carries a session token for another account, the API will return a 403 message
+     *
+     * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.post method
+     */
+    private void postFollowHandler(Context context)
+    {
+        int account_id = Integer.parseInt(context.pathParam("account_id"));
+        if(!isCallerOrAnonymous(context, account_id))
+        {
+            context.status(403);
+            return;
+        }
+        if(!feedService.follow(account_id, Integer.parseInt(context.pathParam("followee_id"))))
+        {
+            context.status(400);
+        }
+    }
+
+    /**
+     * Handler to make one account stop following another
+     * If the accounts are the same, either does not exist or the follow could not be removed, the API will return a
+     * 400 message. If the request
+     * carries a session token for another account, the API will return a 403 message
+     *
+     * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.delete method
+     */
+    private void deleteFollowHandler(Context context)
+    {
+        int account_id = Integer.parseInt(context.pathParam("account_id"));
+        if(!isCallerOrAnonymous(context, account_id))
+        {
+            context.status(403);
+            return;
+        }
+        if(!feedService.unfollow(account_id, Integer.parseInt(context.pathParam("followee_id"))))
+        {
+            context.status(400);
+        }
+    }
+
+    /**
+     * Handler to get the home feed of an account: the newest messages of the accounts it follows, newest first.
+     * The limit query parameter caps their number. If the request carries a session token for another account, the
+     * API will return a 403 message
+     *
+     * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.get method
+     * @throws IOException will be thrown if there is an issue converting the messages into JSON
      */
-    private void getAllMessagesByAccountHandler(Context context)
+    private void getFeedHandler(Context context) throws IOException
     {
         int account_id = Integer.parseInt(context.pathParam("account_id"));
-        context.json(messageService.getAllMessagesFromUser(account_id));
+        int limit = context.queryParamAsClass("limit", Integer.class)
+                .check(l -> l > 0 && l <= MAX_PAGE_SIZE, "limit must be between 1 and " + MAX_PAGE_SIZE)
+                .getOrDefault(DEFAULT_FEED_LIMIT);
+        if(!isCallerOrAnonymous(context, account_id))
+        {
+            context.status(403);
+            return;
+        }
+        List<Message> feed = feedService.getFeed(account_id, limit);
+        if(feed == null)
+        {
+            context.status(HttpStatus.SERVICE_UNAVAILABLE);
+            return;
+        }
+        writeJson(context, JsonCodec.MESSAGE_LIST_WRITER, feed);
+    }
+
+    /**
+     * @return true if the request carries no session token, or one for the given account
+     */
+    private static boolean isCallerOrAnonymous(Context context, int account_id)
+    {
+        Integer caller = context.attribute(CALLER_ATTRIBUTE);
+        return caller == null || caller == account_id;
+    }
+
+    /**
+     * @return true if the request carries no session token, or one for the account that posted the message. A message
+     * that does not exist has no author to check, so the request is left to fail as it would without a token
+     */
+    private boolean isAuthorOrAnonymous(Context context, int message_id)
+    {
+        Integer caller = context.attribute(CALLER_ATTRIBUTE);
+        if(caller == null)
+        {
+            return true;
+        }
+        Message message = messageService.getMessageById(message_id);
+        return message == null || message.getPosted_by() == caller;
+    }
+
+    /**
+     * @return the since query parameter, the earliest time_posted_epoch wanted, or the earliest possible time
+     */
+    private static long since(Context context)
+    {
+        return context.queryParamAsClass("since", Long.class).getOrDefault(Long.MIN_VALUE);
+    }
+
+    /**
+     * @return the until query parameter, the time_posted_epoch to stop before, or the latest possible time
+     */
+    private static long until(Context context)
+    {
+        return context.queryParamAsClass("until", Long.class).getOrDefault(Long.MAX_VALUE);
+    }
+
+    /**
+     * Handler to expose request, query, cache and connection pool metrics in the Prometheus text format
+     * 
+     * @param context the context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.get method
+     */
+    private void getMetricsHandler(Context context)
+    {
+        context.contentType("text/plain; version=0.0.4; charset=utf-8");
+        context.result(Metrics.render());
+    }
+
+    /**
+     * Before-handler that resolves the caller from an "Authorization: Bearer token" header, if there is one, without
+     * touching the database. A request without the header is anonymous; one whose token is malformed, forged or
+     * expired is answered with a 401 message.
+     *
+     * @param context the context object of the request
+     */
+    private void authenticateHandler(Context context)
+    {
+        String authorization = context.header("Authorization");
+        if(authorization == null)
+        {
+            return;
+        }
+        Integer caller = authorization.startsWith("Bearer ")
+                ? sessionTokens.verify(authorization.substring("Bearer ".length()).trim())
+                : null;
+        if(caller == null)
+        {
+            throw new UnauthorizedResponse();
+        }
+        context.attribute(CALLER_ATTRIBUTE, caller);
+    }
+
+    /**
+     * Before handler which notes when each request started
+     * 
+     * @param context the context of the request being started
+     */
+    private void startTimerHandler(Context context)
+    {
+        context.attribute(START_TIME_ATTRIBUTE, System.nanoTime());
+    }
+
+    /**
+     * After handler which records the latency and status code of each request against the route that matched it
+     * 
+     * @param context the context of the request that has been handled
+     */
+    private void recordMetricsHandler(Context context)
+    {
+        Long start = context.attribute(START_TIME_ATTRIBUTE);
+        if(start == null)
+        {
+            return;
+        }
+        String route;
+        try
+        {
+            route = context.endpointHandlerPath();
+        }
+        catch(IllegalStateException e)
+        {
+            route = UNMATCHED_ROUTE;
+        }
+        if(route.startsWith("No handler matched"))
+        {
+            // Javalin reports a 404/405 with this placeholder path; group them all under one label
+            route = UNMATCHED_ROUTE;
+        }
+        Metrics.recordRequest(context.method().name(), route, context.statusCode(), System.nanoTime() - start);
+    }
+
+    /**
+     * Register gauges for the statement cache, the connection pool, the username index, and the message caches, feed
+     * buffers, columnar store, message log and write queue of this controller
+     */
+    private void registerGauges()
+    {
+        Metrics.registerGauge("statement_cache_hits", "Prepared statements reused from the cache.",
+                StatementCache::getHits);
+        Metrics.registerGauge("statement_cache_misses", "Prepared statements that had to be parsed.",
+                StatementCache::getMisses);
+        Metrics.registerGauge("statement_cache_evictions", "Prepared statements closed to make room for others.",
+                StatementCache::getEvictions);
+        ConnectionProvider provider = ConnectionUtil.getConnectionProvider();
+        if(provider instanceof PooledConnectionProvider)
+        {
+            PooledConnectionProvider pool = (PooledConnectionProvider) provider;
+            Metrics.registerGauge("connection_pool_active", "Connections currently checked out.", pool::getActiveCount);
+            Metrics.registerGauge("connection_pool_idle", "Open connections waiting in the pool.", pool::getIdleCount);
+        }
+        BoundedCache<Integer, Message> messageCache = messageService.getMessageCache();
+        Metrics.registerGauge("message_cache_hits", "Message lookups served from memory.", messageCache::getHits);
+        Metrics.registerGauge("message_cache_misses", "Message lookups that went to the database.", messageCache::getMisses);
+        Metrics.registerGauge("message_cache_evictions", "Messages evicted from the cache.", messageCache::getEvictions);
+        Metrics.registerGauge("message_cache_size", "Messages currently cached.", messageCache::size);
+        Metrics.registerGauge("message_response_cache_hits", "Message reads answered with an already encoded body.",
+                messageResponseCache::getHits);
+        Metrics.registerGauge("message_response_cache_misses", "Message reads that had to encode the message.",
+                messageResponseCache::getMisses);
+        Metrics.registerGauge("message_response_cache_size", "Encoded messages currently cached.",
+                messageResponseCache::size);
+        TimelineCache timelineCache = messageService.getTimelineCache();
+        Metrics.registerGauge("timeline_cache_hit_ratio", "Fraction of timeline lookups served from memory.",
+                timelineCache::getHitRatio);
+        Metrics.registerGauge("timeline_cache_size", "Timelines currently cached.", timelineCache::size);
+        Metrics.registerGauge("timeline_cache_memory_bytes", "Estimated heap used by cached timelines.",
+                timelineCache::estimateMemoryBytes);
+        MessageSearchIndex searchIndex = messageService.getSearchIndex();
+        Metrics.registerGauge("search_index_messages", "Messages held in the search index.", searchIndex::size);
+        Metrics.registerGauge("search_index_terms", "Distinct terms held in the search index.",
+                searchIndex::getTermCount);
+        Metrics.registerGauge("recent_window_messages", "Recent messages held in memory for time range queries.",
+                messageService.getRecentWindow()::size);
+        UsernameIndex usernameIndex = accountService.getUsernameIndex();
+        Metrics.registerGauge("username_index_size", "Usernames held in the in-memory index.", usernameIndex::size);
+        Metrics.registerGauge("username_index_memory_bytes", "Estimated heap used by the username index.",
+                usernameIndex::estimateMemoryBytes);
+        Metrics.registerGauge("username_bloom_filter_memory_bytes", "Heap used by the username Bloom filter.",
+                usernameIndex::getFilterMemoryBytes);
+        Metrics.registerGauge("account_id_bitmap_memory_bytes", "Heap used by the bitmap of existing account ids.",
+                usernameIndex::getAccountIdBitmapMemoryBytes);
+        Metrics.registerGauge("password_hash_queue_size", "Password hashes waiting for a hashing thread.",
+                accountService.getPasswordHasher()::getQueueSize);
+        Metrics.registerGauge("session_token_cache_size", "Verified session tokens held in memory.",
+                sessionTokens::getCacheSize);
+        Metrics.registerGauge("feed_buffers", "Home feed buffers held in memory.", feedService::getBufferCount);
+        Metrics.registerGauge("feed_pushed_messages", "Messages pushed into home feed buffers.",
+                feedService::getPushCount);
+        if(messageService.getMessageDAO() instanceof ColumnarMessageDAO)
+        {
+            ColumnarMessageDAO store = (ColumnarMessageDAO) messageService.getMessageDAO();
+            Metrics.registerGauge("message_store_size", "Messages held in the columnar message store.", store::size);
+            Metrics.registerGauge("message_store_memory_bytes", "Heap used by the columnar message store.",
+                    store::getMemoryBytes);
+        }
+        MessageLog messageLog = messageService.getMessageLog();
+        if(messageLog != null)
+        {
+            Metrics.registerGauge("message_log_bytes", "Bytes of records in the message log.", messageLog::getLogBytes);
+            Metrics.registerGauge("message_log_garbage_bytes", "Bytes of superseded records in the message log.",
+                    messageLog::getGarbageBytes);
+        }
+        MessageWriteBehind writeBehind = messageService.getWriteBehind();
+        if(writeBehind != null)
+        {
+            Metrics.registerGauge("message_write_queue_size", "Messages waiting to be written.", writeBehind::getQueueSize);
+        }
     }
 
     /**
@@ -214,5 +845,19 @@ public class SocialMediaController {
         context.json("sample text");
     }
 
+    /**
+     * Serialize a value directly into the response body using one of the shared, pre-resolved writers
+     *
+     * @param context the context of the request being answered
+     * @param writer a JsonCodec writer resolved for the type of value
+     * @param value the value to send as the response body
+     * @throws IOException will be thrown if there is an issue converting the value into JSON
+     */
+    private void writeJson(Context context, ObjectWriter writer, Object value) throws IOException
+    {
+        context.contentType(ContentType.APPLICATION_JSON);
+        JsonCodec.write(context.outputStream(), writer, value);
+    }
+
 
 }
\ No newline at end of file
@@ -2,35 +2,46 @@ package DAO;
 
 import Model.Account;
 import Util.ConnectionUtil;
+import Util.IdAllocator;
 
 import java.sql.*;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
-public class AccountDAO 
+public class AccountDAO
 {
     /**
-     * Insert a new account into the account table
-     * 
+     * The number of rows fetched at a time when streaming accounts
+     */
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Account ids, reserved from account_id_seq a block at a time
+     */
+    private final IdAllocator accountIds = new IdAllocator("account_id_seq");
+
+    /**
+     * Insert a new account into the account table. Its account_id is taken from the id allocator, so no generated
+     * keys need to be read back.
+     *
      * @param account, the account object to be inserted
      * @return the inserted account object
      */
     public Account insertAccount(Account account)
     {
-        Connection connection = ConnectionUtil.getConnection();
-        try
+        String sql = "insert into account (account_id, username, password) values (?, ?, ?)";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
         {
-            String sql = "insert into account (username, password) values (?, ?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
-            preparedStatement.setString(1, account.getUsername());
-            preparedStatement.setString(2, account.getPassword());
+            int account_id = accountIds.next();
+            preparedStatement.setInt(1, account_id);
+            preparedStatement.setString(2, account.getUsername());
+            preparedStatement.setString(3, account.getPassword());
 
             preparedStatement.executeUpdate();
-            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-            if(pkeyResultSet.next())
-            {
-                int generated_account_id = (int) pkeyResultSet.getLong(1);
-                return new Account(generated_account_id, account.getUsername(), account.getPassword());
-            }
+            return new Account(account_id, account.getUsername(), account.getPassword());
         }
         catch(SQLException e)
         {
@@ -40,61 +51,50 @@ public class AccountDAO
     }
 
     /**
-     * Login to an account given the username and password of said account
-     * 
-     * @param account, an account object containing the username and password used to attempt to login
-     * @return the account that was logged into
+     * Replace the stored password of an account, eg with a fresh hash of it
+     *
+     * @param account_id, the id of the account
+     * @param password, the value to store
+     * @return true if the account was updated
      */
-    public Account loginAccount(Account account)
+    public boolean updatePassword(int account_id, String password)
     {
-        Connection connection = ConnectionUtil.getConnection();
-        try
+        String sql = "update account set password = ? where account_id = ?";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
         {
-            String sql = "select * from account where username = ? and password = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
-            preparedStatement.setString(1, account.getUsername());
-            preparedStatement.setString(2, account.getPassword());
+            preparedStatement.setString(1, password);
+            preparedStatement.setInt(2, account_id);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next())
-            {
-                Account newAccount = new Account(rs.getInt("account_id"),
-                                rs.getString("username"),
-                                rs.getString("password"));
-                return newAccount;
-            }
+            return preparedStatement.executeUpdate() > 0;
         }
         catch(SQLException e)
         {
             System.out.println(e.getMessage());
         }
-        return null;
+        return false;
     }
 
     /**
      * Retrieve an account from the database based on its username
-     * 
+     *
      * @param username, the username of the account to be retrieved
      * @return the retrieved account
      */
     public Account getAccountByUsername(String username)
     {
-        Connection connection = ConnectionUtil.getConnection();
-        try
+        String sql = "select * from account where username = ?";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
         {
-            String sql = "select * from account where username = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
             preparedStatement.setString(1, username);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next())
+            try(ResultSet rs = preparedStatement.executeQuery())
             {
-                Account account = new Account(rs.getInt("account_id"),
-                                rs.getString("username"),
-                                rs.getString("password"));
-                return account;
+                if(rs.next())
+                {
+                    return mapAccount(rs);
+                }
             }
         }
         catch(SQLException e)
@@ -102,6 +102,109 @@ public class AccountDAO
             System.out.println(e.getMessage());
         }
         return null;
-        
+
+    }
+
+    /**
+     * @param account_id, the id of the account to look for
+     * @return true if the account exists, false if it does not or the lookup failed
+     */
+    public boolean existsById(int account_id)
+    {
+        String sql = "select 1 from account where account_id = ?";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setInt(1, account_id);
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                return rs.next();
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Find which of the given account ids exist, with a single query however many ids are given
+     *
+     * @param account_ids, the account ids to check
+     * @return the subset of account_ids that belong to an existing account
+     */
+    public Set<Integer> getExistingAccountIds(Collection<Integer> account_ids)
+    {
+        Set<Integer> existing = new HashSet<>();
+        if(account_ids.isEmpty())
+        {
+            return existing;
+        }
+        String sql = "select account_id from account where account_id = any(?)";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", account_ids.toArray()));
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                while(rs.next())
+                {
+                    existing.add(rs.getInt(1));
+                }
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return existing;
+    }
+
+    /**
+     * Pass the username and account_id of every account to a consumer as they are read from the result set, without
+     * building a list.
+     *
+     * @param consumer, called once for each account with its username and account_id
+     * @return true if every account was read, false if the query failed part way
+     */
+    public boolean streamUsernames(BiConsumer<String, Integer> consumer)
+    {
+        String sql = "select username, account_id from account";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                while(rs.next())
+                {
+                    consumer.accept(rs.getString(1), rs.getInt(2));
+                }
+            }
+            return true;
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Build an account from the current row of a result set
+     *
+     * @param rs, a result set positioned on an account row
+     * @return the account in that row
+     * @throws SQLException if a column cannot be read
+     */
+    private Account mapAccount(ResultSet rs) throws SQLException
+    {
+        return new Account(rs.getInt("account_id"),
+                        rs.getString("username"),
+                        rs.getString("password"));
     }
 }
@@ -0,0 +1,615 @@
+package DAO;
+
+import Model.Message;
+import Util.LockStripes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A MessageDAO that keeps every message in a compact columnar store in memory, with the database as the write-through
+ * system of record. Writes go to the database first and are applied to the store once they have succeeded; lookups by
+ * message_id, pages by message_id and timelines are answered from the store without a query. Time ranges and the
+ * newest messages of several accounts are still read through the indexes of the database.
+ *
+ * Each message takes a slot in parallel primitive arrays of message_id, posted_by and time_posted_epoch, in ascending
+ * message_id order, and its text is kept UTF-8 encoded in one shared byte slab, addressed by offset and length.
+ * message_ids are found through an open addressing hash table from message_id to slot. A deleted message leaves a
+ * tombstone, and updated text leaves its old bytes behind in the slab; both are reclaimed when the store is compacted,
+ * which happens once a quarter of it is garbage. A Message object is only created when one is returned.
+ *
+ * Updates and deletes of one message_id are made one at a time, holding a lock stripe across the database write and
+ * the change to the store, so the store applies them in the order the database did. An update only overwrites a
+ * message the store already holds, so it can never bring back one that was deleted.
+ *
+ * The store is loaded from the database on first use. It is only kept up to date with the writes made through this
+ * DAO, so it must not be selected when other processes write to the same database.
+ */
+public class ColumnarMessageDAO extends MessageDAO
+{
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LockStripes writeOrder = new LockStripes(64);
+    private volatile boolean started = false;
+    private volatile boolean loaded = false;
+
+    /**
+     * The columns, one entry per slot, in ascending message_id order. A deleted slot has a textLength of DELETED
+     */
+    private int[] ids = new int[1024];
+    private int[] postedBy = new int[1024];
+    private long[] epochs = new long[1024];
+    private int[] textOffsets = new int[1024];
+    private int[] textLengths = new int[1024];
+    private int slotCount = 0;
+    private int deletedCount = 0;
+
+    private byte[] slab = new byte[64 * 1024];
+    private int slabSize = 0;
+    private long slabGarbage = 0;
+
+    /**
+     * Open addressing table from message_id to slot, with linear probing. A key of EMPTY marks a free bucket, since
+     * message_ids start at 1
+     */
+    private int[] tableKeys = new int[2048];
+    private int[] tableSlots = new int[2048];
+
+    @Override
+    public Message insertMessage(Message message)
+    {
+        Message inserted = super.insertMessage(message);
+        if(inserted != null)
+        {
+            apply(() -> put(inserted));
+        }
+        return inserted;
+    }
+
+    @Override
+    public boolean insertMessagesWithIds(List<Message> messages)
+    {
+        if(!super.insertMessagesWithIds(messages))
+        {
+            return false;
+        }
+        apply(() -> messages.forEach(this::put));
+        return true;
+    }
+
+    @Override
+    public Message updateMessage(int id, Message message)
+    {
+        synchronized(writeOrder.get(id))
+        {
+            Message updated = super.updateMessage(id, message);
+            if(updated != null)
+            {
+                apply(() -> replace(updated));
+            }
+            return updated;
+        }
+    }
+
+    @Override
+    public Message deleteMessageById(int id)
+    {
+        synchronized(writeOrder.get(id))
+        {
+            Message deleted = super.deleteMessageById(id);
+            if(deleted != null)
+            {
+                apply(() -> remove(id));
+            }
+            return deleted;
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessages()
+    {
+        return getMessagesAfter(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(int after_id, int limit)
+    {
+        if(!ensureLoaded())
+        {
+            return super.getMessagesAfter(after_id, limit);
+        }
+        lock.readLock().lock();
+        try
+        {
+            List<Message> messages = new ArrayList<>();
+            for(int slot = firstSlotAfter(after_id); slot < slotCount && messages.size() < limit; slot++)
+            {
+                if(textLengths[slot] != DELETED)
+                {
+                    messages.add(materialize(slot));
+                }
+            }
+            return messages;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams a page of messages at a time from the store, so the read lock is never held while the consumer runs
+     */
+    @Override
+    public boolean streamMessagesAfter(int after_id, Consumer<Message> consumer)
+    {
+        if(!ensureLoaded())
+        {
+            return super.streamMessagesAfter(after_id, consumer);
+        }
+        List<Message> page = getMessagesAfter(after_id, 500);
+        while(!page.isEmpty())
+        {
+            page.forEach(consumer);
+            page = getMessagesAfter(page.get(page.size() - 1).getMessage_id(), 500);
+        }
+        return true;
+    }
+
+    @Override
+    public Message getMessageById(int id)
+    {
+        if(!ensureLoaded())
+        {
+            return super.getMessageById(id);
+        }
+        lock.readLock().lock();
+        try
+        {
+            int slot = find(id);
+            return slot < 0 ? null : materialize(slot);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(Collection<Integer> ids)
+    {
+        if(!ensureLoaded())
+        {
+            return super.getMessagesByIds(ids);
+        }
+        lock.readLock().lock();
+        try
+        {
+            List<Message> messages = new ArrayList<>(ids.size());
+            for(int id : ids)
+            {
+                int slot = find(id);
+                if(slot >= 0)
+                {
+                    messages.add(materialize(slot));
+                }
+            }
+            return messages;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scans the posted_by column, and only materializes the user's own messages
+     */
+    @Override
+    public List<Message> getMessagesByUser(int user_id)
+    {
+        if(!ensureLoaded())
+        {
+            return super.getMessagesByUser(user_id);
+        }
+        List<Message> messages = new ArrayList<>();
+        lock.readLock().lock();
+        try
+        {
+            for(int slot = 0; slot < slotCount; slot++)
+            {
+                if(postedBy[slot] == user_id && textLengths[slot] != DELETED)
+                {
+                    messages.add(materialize(slot));
+                }
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        messages.sort(Comparator.comparingLong(Message::getTime_posted_epoch).thenComparingInt(Message::getMessage_id));
+        return messages;
+    }
+
+    /**
+     * @return the number of messages held, or 0 before the store is loaded
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return slotCount - deletedCount;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the heap used by the columns, the text slab and the hash table, in bytes
+     */
+    public long getMemoryBytes()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return (long) ids.length * (Integer.BYTES * 4 + Long.BYTES) + slab.length
+                    + (long) tableKeys.length * Integer.BYTES * 2;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Load the store from the database if it has not been loaded yet
+     *
+     * @return false if the store could not be loaded, in which case reads go to the database and the next call tries
+     * again
+     */
+    private boolean ensureLoaded()
+    {
+        return ensureLoaded(consumer -> super.streamMessagesAfter(0, consumer));
+    }
+
+    /**
+     * Load the store if it has not been loaded yet. Only one caller loads it; the others wait
+     *
+     * @param source, streams every message to the consumer, returning false if it could not read them all. It must
+     *                hold every message in the database
+     * @return false if the store could not be loaded, in which case it stays empty and the next call tries again
+     */
+    public boolean ensureLoaded(Predicate<Consumer<Message>> source)
+    {
+        if(loaded)
+        {
+            return true;
+        }
+        lock.writeLock().lock();
+        try
+        {
+            if(loaded)
+            {
+                return true;
+            }
+            started = true;
+            if(!source.test(this::put))
+            {
+                clear();
+                started = false;
+                return false;
+            }
+            loaded = true;
+            return true;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Apply a committed write to the store. Ignored until a load has started, and applied once it has finished; every
+     * change is idempotent, so one that the load already saw does no harm
+     */
+    private void apply(Runnable change)
+    {
+        if(!started)
+        {
+            return;
+        }
+        lock.writeLock().lock();
+        try
+        {
+            if(loaded)
+            {
+                change.run();
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Overwrite the message held with the same message_id, doing nothing if there is none
+     */
+    private void replace(Message message)
+    {
+        if(find(message.getMessage_id()) >= 0)
+        {
+            put(message);
+        }
+    }
+
+    /**
+     * Insert a message, or overwrite the one held with the same message_id. Messages almost always arrive in
+     * ascending message_id order and are appended; one that arrives out of order is moved into place
+     */
+    private void put(Message message)
+    {
+        int id = message.getMessage_id();
+        int slot = find(id);
+        if(slot < 0)
+        {
+            // kept at most half full, so probe sequences stay short
+            if((slotCount - deletedCount + 1) * 2 > tableKeys.length)
+            {
+                rehash(tableKeys.length * 2);
+            }
+            slot = slotCount > 0 && ids[slotCount - 1] > id ? insertSlot(id) : appendSlot(id);
+        }
+        else
+        {
+            slabGarbage += textLengths[slot];
+        }
+        postedBy[slot] = message.getPosted_by();
+        epochs[slot] = message.getTime_posted_epoch();
+        byte[] text = message.getMessage_text().getBytes(StandardCharsets.UTF_8);
+        if(slabSize + text.length > slab.length)
+        {
+            slab = Arrays.copyOf(slab, Math.max(slabSize + text.length, slab.length * 2));
+        }
+        System.arraycopy(text, 0, slab, slabSize, text.length);
+        textOffsets[slot] = slabSize;
+        textLengths[slot] = text.length;
+        slabSize += text.length;
+        compactIfWasteful();
+    }
+
+    private void remove(int id)
+    {
+        int slot = find(id);
+        if(slot < 0)
+        {
+            return;
+        }
+        slabGarbage += textLengths[slot];
+        textLengths[slot] = DELETED;
+        deletedCount++;
+        tableRemove(id);
+        compactIfWasteful();
+    }
+
+    private int appendSlot(int id)
+    {
+        ensureSlotCapacity(slotCount + 1);
+        ids[slotCount] = id;
+        tablePut(id, slotCount);
+        return slotCount++;
+    }
+
+    /**
+     * Open a slot for an id lower than the last one, shifting the slots after it along by one
+     */
+    private int insertSlot(int id)
+    {
+        ensureSlotCapacity(slotCount + 1);
+        int slot = firstSlotAfter(id);
+        int moved = slotCount - slot;
+        System.arraycopy(ids, slot, ids, slot + 1, moved);
+        System.arraycopy(postedBy, slot, postedBy, slot + 1, moved);
+        System.arraycopy(epochs, slot, epochs, slot + 1, moved);
+        System.arraycopy(textOffsets, slot, textOffsets, slot + 1, moved);
+        System.arraycopy(textLengths, slot, textLengths, slot + 1, moved);
+        ids[slot] = id;
+        slotCount++;
+        for(int shifted = slot + 1; shifted < slotCount; shifted++)
+        {
+            if(textLengths[shifted] != DELETED)
+            {
+                tablePut(ids[shifted], shifted);
+            }
+        }
+        tablePut(id, slot);
+        return slot;
+    }
+
+    private void ensureSlotCapacity(int capacity)
+    {
+        if(capacity > ids.length)
+        {
+            int length = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, length);
+            postedBy = Arrays.copyOf(postedBy, length);
+            epochs = Arrays.copyOf(epochs, length);
+            textOffsets = Arrays.copyOf(textOffsets, length);
+            textLengths = Arrays.copyOf(textLengths, length);
+        }
+    }
+
+    /**
+     * @return the first slot whose message_id is greater than after_id, or slotCount if there is none
+     */
+    private int firstSlotAfter(int after_id)
+    {
+        int index = Arrays.binarySearch(ids, 0, slotCount, after_id);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Rewrite the columns and the slab without tombstones or stale text once a quarter of either is garbage
+     */
+    private void compactIfWasteful()
+    {
+        if(deletedCount * 4L <= slotCount && slabGarbage * 4 <= slabSize)
+        {
+            return;
+        }
+        byte[] compacted = new byte[Math.max(1024, (int) (slabSize - slabGarbage) * 2)];
+        int kept = 0;
+        int compactedSize = 0;
+        for(int slot = 0; slot < slotCount; slot++)
+        {
+            if(textLengths[slot] == DELETED)
+            {
+                continue;
+            }
+            System.arraycopy(slab, textOffsets[slot], compacted, compactedSize, textLengths[slot]);
+            ids[kept] = ids[slot];
+            postedBy[kept] = postedBy[slot];
+            epochs[kept] = epochs[slot];
+            textOffsets[kept] = compactedSize;
+            textLengths[kept] = textLengths[slot];
+            compactedSize += textLengths[slot];
+            kept++;
+        }
+        slab = compacted;
+        slabSize = compactedSize;
+        slabGarbage = 0;
+        slotCount = kept;
+        deletedCount = 0;
+        rehash(tableKeys.length);
+    }
+
+    private void clear()
+    {
+        slotCount = 0;
+        deletedCount = 0;
+        slabSize = 0;
+        slabGarbage = 0;
+        Arrays.fill(tableKeys, EMPTY);
+    }
+
+    private Message materialize(int slot)
+    {
+        return new Message(ids[slot], postedBy[slot],
+                new String(slab, textOffsets[slot], textLengths[slot], StandardCharsets.UTF_8), epochs[slot]);
+    }
+
+    /**
+     * @return the slot of a message, or -1 if it is not held
+     */
+    private int find(int id)
+    {
+        int mask = tableKeys.length - 1;
+        for(int bucket = hash(id) & mask; tableKeys[bucket] != EMPTY; bucket = (bucket + 1) & mask)
+        {
+            if(tableKeys[bucket] == id)
+            {
+                return tableSlots[bucket];
+            }
+        }
+        return -1;
+    }
+
+    private void tablePut(int id, int slot)
+    {
+        int mask = tableKeys.length - 1;
+        int bucket = hash(id) & mask;
+        while(tableKeys[bucket] != EMPTY && tableKeys[bucket] != id)
+        {
+            bucket = (bucket + 1) & mask;
+        }
+        tableKeys[bucket] = id;
+        tableSlots[bucket] = slot;
+    }
+
+    /**
+     * Remove a key by shifting back the keys after it in its probe sequence, so that no tombstones are needed
+     */
+    private void tableRemove(int id)
+    {
+        int mask = tableKeys.length - 1;
+        int bucket = hash(id) & mask;
+        while(tableKeys[bucket] != id)
+        {
+            if(tableKeys[bucket] == EMPTY)
+            {
+                return;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        int next = bucket;
+        while(true)
+        {
+            next = (next + 1) & mask;
+            if(tableKeys[next] == EMPTY)
+            {
+                break;
+            }
+            int home = hash(tableKeys[next]) & mask;
+            // move the key back if its home bucket is not in the cyclic range (bucket, next]
+            if(bucket <= next ? (home <= bucket || home > next) : (home <= bucket && home > next))
+            {
+                tableKeys[bucket] = tableKeys[next];
+                tableSlots[bucket] = tableSlots[next];
+                bucket = next;
+            }
+        }
+        tableKeys[bucket] = EMPTY;
+    }
+
+    /**
+     * Rebuild the table from the live slots, at the given capacity or larger
+     */
+    private void rehash(int capacity)
+    {
+        int live = slotCount - deletedCount;
+        int length = Math.max(16, capacity);
+        while(length < (live + 1) * 2)
+        {
+            length *= 2;
+        }
+        tableKeys = new int[length];
+        tableSlots = new int[length];
+        int mask = length - 1;
+        for(int slot = 0; slot < slotCount; slot++)
+        {
+            if(textLengths[slot] == DELETED)
+            {
+                continue;
+            }
+            int bucket = hash(ids[slot]) & mask;
+            while(tableKeys[bucket] != EMPTY)
+            {
+                bucket = (bucket + 1) & mask;
+            }
+            tableKeys[bucket] = ids[slot];
+            tableSlots[bucket] = slot;
+        }
+    }
+
+    /**
+     * Spread sequential ids across the table
+     */
+    private static int hash(int id)
+    {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
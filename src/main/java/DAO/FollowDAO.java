@@ -0,0 +1,147 @@
+package DAO;
+
+import Util.ConnectionUtil;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FollowDAO
+{
+    /**
+     * Record that one account follows another
+     *
+     * @param follower_id, the account that follows
+     * @param followee_id, the account being followed
+     * @return true if the follow is stored, whether it was added or already existed, false if it could not be added
+     */
+    public boolean follow(int follower_id, int followee_id)
+    {
+        String sql = "insert into follow (follower_id, followee_id) select ?, ? " +
+                "where not exists (select 1 from follow where follower_id = ? and followee_id = ?)";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setInt(1, follower_id);
+            preparedStatement.setInt(2, followee_id);
+            preparedStatement.setInt(3, follower_id);
+            preparedStatement.setInt(4, followee_id);
+
+            preparedStatement.executeUpdate();
+            return true;
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Remove a follow
+     *
+     * @param follower_id, the account that follows
+     * @param followee_id, the account being followed
+     * @return true if the follow is gone, whether it was removed or did not exist, false if it could not be removed
+     */
+    public boolean unfollow(int follower_id, int followee_id)
+    {
+        String sql = "delete from follow where follower_id = ? and followee_id = ?";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setInt(1, follower_id);
+            preparedStatement.setInt(2, followee_id);
+
+            preparedStatement.executeUpdate();
+            return true;
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * @param follower_id, the account that follows
+     * @return the ids of the accounts it follows, in ascending order, or null if they could not be read
+     */
+    public List<Integer> getFolloweeIds(int follower_id)
+    {
+        return getIds("select followee_id from follow where follower_id = ? order by followee_id", follower_id);
+    }
+
+    /**
+     * @param followee_id, the account being followed
+     * @return the ids of the accounts following it, in ascending order, or null if they could not be read
+     */
+    public List<Integer> getFollowerIds(int followee_id)
+    {
+        return getIds("select follower_id from follow use index (follow_followee_idx) where followee_id = ? " +
+                "order by followee_id, follower_id", followee_id);
+    }
+
+    /**
+     * Count the followers of several accounts in one query
+     *
+     * @param followee_ids, the accounts whose followers are counted
+     * @return the number of followers of each account that has any, or null if they could not be counted
+     */
+    public Map<Integer, Integer> getFollowerCounts(Collection<Integer> followee_ids)
+    {
+        Map<Integer, Integer> counts = new HashMap<>();
+        if(followee_ids.isEmpty())
+        {
+            return counts;
+        }
+        String sql = "select followee_id, count(*) from follow use index (follow_followee_idx) " +
+                "where followee_id = any(?) group by followee_id";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", followee_ids.toArray()));
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                while(rs.next())
+                {
+                    counts.put(rs.getInt(1), rs.getInt(2));
+                }
+                return counts;
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    private List<Integer> getIds(String sql, int id)
+    {
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setInt(1, id);
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                List<Integer> ids = new ArrayList<>();
+                while(rs.next())
+                {
+                    ids.add(rs.getInt(1));
+                }
+                return ids;
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+}
@@ -2,40 +2,155 @@ package DAO;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.IdAllocator;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class MessageDAO
 {
     /**
-     * Add a message into the database that matches the values contained in the message object
-     * 
+     * The number of rows fetched at a time when streaming messages
+     */
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Message ids, reserved from message_id_seq a block at a time
+     */
+    private final IdAllocator messageIds = new IdAllocator("message_id_seq");
+
+    /**
+     * @return the MessageDAO selected by the messages.store system property: database (the default) reads every
+     * message from the database, and columnar keeps them all in a ColumnarMessageDAO in front of it
+     * @throws IllegalArgumentException if messages.store names neither
+     */
+    public static MessageDAO fromSystemProperties()
+    {
+        String store = System.getProperty("messages.store", "database").trim();
+        if(store.equalsIgnoreCase("columnar"))
+        {
+            return new ColumnarMessageDAO();
+        }
+        if(store.equalsIgnoreCase("database"))
+        {
+            return new MessageDAO();
+        }
+        throw new IllegalArgumentException("Unknown messages.store: " + store);
+    }
+
+    /**
+     * Add a message into the database that matches the values contained in the message object. Its message_id is
+     * taken from the id allocator, so no generated keys need to be read back.
+     *
      * @param message the message that is being inserted. It does not contain a message_id
-     * @return
+     * @return the inserted message, including its message_id
      */
     public Message insertMessage(Message message)
     {
-        Connection connection = ConnectionUtil.getConnection();
-        try
+        String sql = "insert into message (message_id, posted_by, message_text, time_posted_epoch) values (?, ?, ?, ?)";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
         {
-            String sql = "insert into message (posted_by, message_text, time_posted_epoch) values (?, ?, ?) ";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
-            preparedStatement.setInt(1, message.getPosted_by());
-            preparedStatement.setString(2, message.getMessage_text());
-            preparedStatement.setLong(3, message.getTime_posted_epoch());
+            int message_id = messageIds.next();
+            preparedStatement.setInt(1, message_id);
+            preparedStatement.setInt(2, message.getPosted_by());
+            preparedStatement.setString(3, message.getMessage_text());
+            preparedStatement.setLong(4, message.getTime_posted_epoch());
 
             preparedStatement.executeUpdate();
-            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-            if(pkeyResultSet.next())
+            return new Message(message_id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Insert several messages with one batched statement in a single transaction. Either every message is inserted
+     * or none are.
+     *
+     * @param messages, the messages to insert. They do not contain a message_id
+     * @return the inserted messages with their message_ids, in the same order, or null if the batch failed
+     */
+    public List<Message> insertMessages(List<Message> messages)
+    {
+        List<Message> inserted = new ArrayList<>(messages.size());
+        try
+        {
+            int[] ids = messageIds.next(messages.size());
+            for(int i = 0; i < ids.length; i++)
             {
-                int generated_message_id = (int) pkeyResultSet.getLong(1);
-                return new Message(generated_message_id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+                Message message = messages.get(i);
+                inserted.add(new Message(ids[i], message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch()));
             }
         }
         catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+            return null;
+        }
+        return inserted.isEmpty() || insertMessagesWithIds(inserted) ? inserted : null;
+    }
+
+    /**
+     * Insert messages whose message_ids have already been reserved with reserveMessageId, with one batched statement
+     * in a single transaction. Either every message is inserted or none are.
+     *
+     * @param messages, the messages to insert, each with its reserved message_id
+     * @return true if every message was inserted
+     */
+    public boolean insertMessagesWithIds(List<Message> messages)
+    {
+        String sql = "insert into message (message_id, posted_by, message_text, time_posted_epoch) values (?, ?, ?, ?)";
+        try(Connection connection = ConnectionUtil.getConnection())
+        {
+            connection.setAutoCommit(false);
+            try(PreparedStatement preparedStatement = connection.prepareStatement(sql))
+            {
+                for(Message message : messages)
+                {
+                    preparedStatement.setInt(1, message.getMessage_id());
+                    preparedStatement.setInt(2, message.getPosted_by());
+                    preparedStatement.setString(3, message.getMessage_text());
+                    preparedStatement.setLong(4, message.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                connection.commit();
+                return true;
+            }
+            catch(SQLException e)
+            {
+                connection.rollback();
+                throw e;
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Reserve a message_id ahead of inserting the message. A reserved id is never handed out again, whether or not a
+     * message is ever inserted with it.
+     *
+     * @return the reserved message_id, or null if one could not be reserved
+     */
+    public Integer reserveMessageId()
+    {
+        try
+        {
+            return messageIds.next();
+        }
+        catch(SQLException e)
         {
             System.out.println(e.getMessage());
         }
@@ -44,26 +159,53 @@ public class MessageDAO
 
     /**
      * Retrieve all messages from the message table
-     * 
+     *
      * @return messages, a list of all messages in the database
      */
     public List<Message> getAllMessages()
     {
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
-
-        try
-        {
-            String sql = "select * from message";
+        String sql = "select * from message";
+        try(Connection connection = ConnectionUtil.getConnection();
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            ResultSet rs = preparedStatement.executeQuery();
+            ResultSet rs = preparedStatement.executeQuery())
+        {
             while(rs.next())
             {
-                Message message = new Message(rs.getInt("message_id"), 
-                                rs.getInt("posted_by"),
-                                rs.getString("message_text"),
-                                rs.getLong("time_posted_epoch"));
-                messages.add(message);
+                messages.add(mapMessage(rs));
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieve one page of messages, ordered by message_id, using the last message_id of the previous page as the
+     * cursor. Because the cursor is a primary key, each page is an index range scan no matter how deep it is.
+     *
+     * @param after_id, only messages with a message_id greater than this are returned. Use 0 for the first page
+     * @param limit, the maximum number of messages to return
+     * @return messages, up to limit messages following after_id
+     */
+    public List<Message> getMessagesAfter(int after_id, int limit)
+    {
+        List<Message> messages = new ArrayList<>();
+        String sql = "select * from message where message_id > ? order by message_id limit ?";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setInt(1, after_id);
+            preparedStatement.setInt(2, limit);
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                while(rs.next())
+                {
+                    messages.add(mapMessage(rs));
+                }
             }
         }
         catch(SQLException e)
@@ -73,30 +215,122 @@ public class MessageDAO
         return messages;
     }
 
+    /**
+     * Pass every message after a cursor, in message_id order, to a consumer as it is read from the result set. No
+     * list is built, so memory use does not grow with the number of messages.
+     *
+     * @param after_id, only messages with a message_id greater than this are streamed. Use 0 for all messages
+     * @param consumer, called once for each message
+     * @return true if every message was streamed, false if reading them failed
+     */
+    public boolean streamMessagesAfter(int after_id, Consumer<Message> consumer)
+    {
+        String sql = "select * from message where message_id > ? order by message_id";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setInt(1, after_id);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                while(rs.next())
+                {
+                    consumer.accept(mapMessage(rs));
+                }
+            }
+            return true;
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * @return the checkpoint token stored for the message log, or 0 if there is none or it could not be read
+     */
+    public int getLogCheckpoint()
+    {
+        String sql = "select token from message_log_checkpoint where id = 1";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            ResultSet rs = preparedStatement.executeQuery())
+        {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Store the checkpoint token of the message log, replacing any stored before
+     *
+     * @param token, the token the log was checkpointed with
+     * @return true if the token was stored
+     */
+    public boolean setLogCheckpoint(int token)
+    {
+        String sql = "merge into message_log_checkpoint key (id) values (1, ?)";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setInt(1, token);
+
+            return preparedStatement.executeUpdate() > 0;
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of messages and the highest message_id, or 0 for both if there are none, or null if they
+     * could not be read
+     */
+    public int[] getMessageCountAndMaxId()
+    {
+        String sql = "select count(*), coalesce(max(message_id), 0) from message";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            ResultSet rs = preparedStatement.executeQuery())
+        {
+            rs.next();
+            return new int[] {rs.getInt(1), rs.getInt(2)};
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
     /**
      * Retrieve a message from the message table, based on its message_id
-     * 
+     *
      * @param id, the id of the message that is being searched
      * @return message, the message that is being searched
      */
     public Message getMessageById(int id)
     {
-        Connection connection  = ConnectionUtil.getConnection();
-        try
+        String sql = "select * from message where message_id = ?";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
         {
-            String sql = "select * from message where message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
             preparedStatement.setInt(1, id);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next())
+            try(ResultSet rs = preparedStatement.executeQuery())
             {
-                Message message = new Message(rs.getInt("message_id"),
-                                rs.getInt("posted_by"),
-                                rs.getString("message_text"),
-                                rs.getLong("time_posted_epoch"));
-                return message;
+                if(rs.next())
+                {
+                    return mapMessage(rs);
+                }
             }
         }
         catch(SQLException e)
@@ -107,39 +341,61 @@ public class MessageDAO
     }
 
     /**
-     * TODO: Check to see if this actually works
-     * 
-     * Delete a message from the message table, based on its message_id
-     * 
-     * @param id, the id of the message to be deleted
-     * @return message, the message that was deleted
+     * Retrieve several messages by their ids in one query
+     *
+     * @param ids, the ids of the messages to retrieve
+     * @return the messages that exist, in no particular order
      */
-    public Message deleteMessageById(int id)
+    public List<Message> getMessagesByIds(Collection<Integer> ids)
     {
-        Connection connection = ConnectionUtil.getConnection();
-        try
+        List<Message> messages = new ArrayList<>();
+        if(ids.isEmpty())
         {
-            String sql = "select * from message where message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
-            preparedStatement.setInt(1, id);
-
-            ResultSet rs = preparedStatement.executeQuery();
+            return messages;
+        }
+        String sql = "select * from message where message_id = any(?)";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", ids.toArray()));
 
-            sql = "delete from message where message_id = ?";
-            preparedStatement = connection.prepareStatement(sql);
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                while(rs.next())
+                {
+                    messages.add(mapMessage(rs));
+                }
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
 
+    /**
+     * Delete a message from the message table, based on its message_id. The deleted row is read back from the old
+     * table of the delete itself, so the delete and its result take a single round trip and cannot be separated by
+     * another change to the row.
+     *
+     * @param id, the id of the message to be deleted
+     * @return message, the message that was deleted, or null if there was no such message
+     */
+    public Message deleteMessageById(int id)
+    {
+        String sql = "select * from old table (delete from message where message_id = ?)";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
             preparedStatement.setInt(1, id);
 
-            preparedStatement.executeUpdate();
-
-            while(rs.next())
+            try(ResultSet rs = preparedStatement.executeQuery())
             {
-                Message message = new Message(rs.getInt("message_id"),
-                                rs.getInt("posted_by"),
-                                rs.getString("message_text"),
-                                rs.getLong("time_posted_epoch"));
-                return message;
+                if(rs.next())
+                {
+                    return mapMessage(rs);
+                }
             }
         }
         catch(SQLException e)
@@ -150,57 +406,170 @@ public class MessageDAO
     }
 
     /**
-     * TODO: Make sure this works properly and returns updated message
-     * 
-     * update a message from the message table based on its message_id
-     * 
+     * update a message from the message table based on its message_id. The updated row is read back from the final
+     * table of the update itself, in the same round trip.
+     *
      * @param id, the message_id of the message to be updated
      * @param message, the message object containing the updated information
+     * @return the message as it is after the update, or null if there was no such message
      */
-    public void updateMessage(int id, Message message)
+    public Message updateMessage(int id, Message message)
     {
-        Connection connection  = ConnectionUtil.getConnection();
-        try
+        String sql = "select * from final table (update message set message_text = ? where message_id = ?)";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
         {
-            String sql = "update message set message_text = ? where message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
             preparedStatement.setString(1, message.getMessage_text());
             preparedStatement.setInt(2, id);
 
-            preparedStatement.executeUpdate();
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                if(rs.next())
+                {
+                    return mapMessage(rs);
+                }
+            }
         }
         catch(SQLException e)
         {
             System.out.println(e.getMessage());
         }
+        return null;
     }
 
     /**
-     * Retrieve all messages from the message table based on who posted them
-     * 
+     * Retrieve all messages from the message table based on who posted them, oldest first. Ordering by both columns of
+     * the posted_by index lets h2 read the rows already sorted. The condition on time_posted_epoch holds for every
+     * message, but without it h2 prefers the single column index of the foreign key and sorts the rows itself.
+     *
      * @param user_id, the user_id of the user whose messages are being searched
      * @return messages, a list of messages posted by a given user
      */
     public List<Message> getMessagesByUser(int user_id)
     {
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
-        try
+        String sql = "select * from message where posted_by = ? and time_posted_epoch >= ? " +
+                "order by posted_by, time_posted_epoch";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
         {
-            String sql = "select * from message where posted_by = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, user_id);
+            preparedStatement.setLong(2, Long.MIN_VALUE);
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                while(rs.next())
+                {
+                    messages.add(mapMessage(rs));
+                }
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
 
+    /**
+     * Retrieve the newest messages posted by any of several users, newest first
+     *
+     * @param user_ids, the account_ids of the posters
+     * @param limit, the most messages to return
+     * @return the messages, ordered by time_posted_epoch and then message_id, both descending
+     */
+    public List<Message> getLatestMessagesByUsers(Collection<Integer> user_ids, int limit)
+    {
+        List<Message> messages = new ArrayList<>();
+        if(user_ids.isEmpty() || limit <= 0)
+        {
+            return messages;
+        }
+        String sql = "select * from message where posted_by = any(?) " +
+                "order by time_posted_epoch desc, message_id desc limit ?";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", user_ids.toArray()));
+            preparedStatement.setInt(2, limit);
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                while(rs.next())
+                {
+                    messages.add(mapMessage(rs));
+                }
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieve the messages posted within a time range, oldest first
+     *
+     * @param since, the earliest time_posted_epoch to include
+     * @param until, the time_posted_epoch to stop before
+     * @param limit, the most messages to return
+     * @return the messages posted in the range, ordered by time_posted_epoch and then message_id
+     */
+    public List<Message> getMessagesBetween(long since, long until, int limit)
+    {
+        List<Message> messages = new ArrayList<>();
+        String sql = "select * from message where time_posted_epoch >= ? and time_posted_epoch < ? " +
+                "order by time_posted_epoch, message_id limit ?";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setLong(1, since);
+            preparedStatement.setLong(2, until);
+            preparedStatement.setInt(3, limit);
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                while(rs.next())
+                {
+                    messages.add(mapMessage(rs));
+                }
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieve the messages a user posted within a time range, oldest first
+     *
+     * @param user_id, the account_id of the poster
+     * @param since, the earliest time_posted_epoch to include
+     * @param until, the time_posted_epoch to stop before
+     * @return the user's messages posted in the range, ordered by time_posted_epoch and then message_id
+     */
+    public List<Message> getMessagesByUserBetween(int user_id, long since, long until)
+    {
+        List<Message> messages = new ArrayList<>();
+        String sql = "select * from message use index (message_posted_by_time_idx) " +
+                "where posted_by = ? and time_posted_epoch >= ? and time_posted_epoch < ? " +
+                "order by posted_by, time_posted_epoch, message_id";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
             preparedStatement.setInt(1, user_id);
+            preparedStatement.setLong(2, since);
+            preparedStatement.setLong(3, until);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next())
+            try(ResultSet rs = preparedStatement.executeQuery())
             {
-                Message message = new Message(rs.getInt("message_id"), 
-                                rs.getInt("posted_by"),
-                                rs.getString("message_text"),
-                                rs.getLong("time_posted_epoch"));
-                messages.add(message);
+                while(rs.next())
+                {
+                    messages.add(mapMessage(rs));
+                }
             }
         }
         catch(SQLException e)
@@ -209,10 +578,58 @@ public class MessageDAO
         }
         return messages;
     }
+
+    /**
+     * Pass every message posted at or after a time to a consumer as it is read from the result set, without
+     * building a list
+     *
+     * @param since, the earliest time_posted_epoch to include
+     * @param consumer, called once for each message
+     * @return true if every message was streamed, false if reading them failed
+     */
+    public boolean streamMessagesSince(long since, Consumer<Message> consumer)
+    {
+        String sql = "select * from message where time_posted_epoch >= ?";
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql))
+        {
+            preparedStatement.setLong(1, since);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                while(rs.next())
+                {
+                    consumer.accept(mapMessage(rs));
+                }
+            }
+            return true;
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Build a message from the current row of a result set
+     *
+     * @param rs, a result set positioned on a message row
+     * @return the message in that row
+     * @throws SQLException if a column cannot be read
+     */
+    private Message mapMessage(ResultSet rs) throws SQLException
+    {
+        return new Message(rs.getInt("message_id"),
+                        rs.getInt("posted_by"),
+                        rs.getString("message_text"),
+                        rs.getLong("time_posted_epoch"));
+    }
 }
 
-//You will need to design and create your own DAO classes from scratch. 
+//You will need to design and create your own DAO classes from scratch.
 //You should refer to prior mini-project lab examples and course material for guidance.
 
-//Please refrain from using a 'try-with-resources' block when connecting to your database. 
-//The ConnectionUtil provided uses a singleton, and using a try-with-resources will cause issues in the tests.
+//Connections come from a pool, so always open them in a 'try-with-resources' block.
+//Closing a connection returns it to the pool rather than closing it.
@@ -0,0 +1,80 @@
+package Model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * This is a class that models the outcome of one item in a batch request. Exactly one of message and error is set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    /**
+     * The position of the item in the request, starting from 0.
+     */
+    public int index;
+    /**
+     * The message as it was inserted, including its generated message_id, if the item succeeded.
+     */
+    public Message message;
+    /**
+     * Why the item was rejected, if it failed.
+     */
+    public String error;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public BatchItemResult(){
+    }
+    /**
+     * @param index
+     * @param message
+     * @param error
+     */
+    public BatchItemResult(int index, Message message, String error) {
+        this.index = index;
+        this.message = message;
+        this.error = error;
+    }
+    /**
+     * @param index
+     * @param message
+     * @return a result for an item that was inserted
+     */
+    public static BatchItemResult success(int index, Message message) {
+        return new BatchItemResult(index, message, null);
+    }
+    /**
+     * @param index
+     * @param error
+     * @return a result for an item that was rejected
+     */
+    public static BatchItemResult failure(int index, String error) {
+        return new BatchItemResult(index, null, error);
+    }
+    public int getIndex() {
+        return index;
+    }
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    public Message getMessage() {
+        return message;
+    }
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+    public String getError() {
+        return error;
+    }
+    public void setError(String error) {
+        this.error = error;
+    }
+    @Override
+    public String toString() {
+        return "BatchItemResult{" +
+                "index=" + index +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -2,17 +2,49 @@ package Service;
 
 import DAO.AccountDAO;
 import Model.Account;
+import Util.BoundedCache;
+import Util.PasswordHasher;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 public class AccountService 
 {
     AccountDAO accountDAO;
+    /**
+     * Every username and its account_id, warmed from the database on construction. The Bloom filter in front of it
+     * is sized by the accounts.index.expectedAccounts and accounts.index.falsePositiveProbability system properties.
+     */
+    UsernameIndex usernameIndex;
+    /**
+     * Hashes and verifies passwords on its own bounded executor, configured by the accounts.password.* system
+     * properties
+     */
+    PasswordHasher passwordHasher;
+    /**
+     * Recently verified logins by username, so that repeated logins skip the slow password check. An entry holds an
+     * HMAC of the password under a key that never leaves this service, not the password itself, and lives for
+     * accounts.login.cacheTtlMillis (default 60000). At most accounts.login.cacheMaxSize (default 10000) are held.
+     */
+    BoundedCache<String, VerifiedLogin> verifiedLogins;
+    private final byte[] credentialKey = new byte[32];
 
     /**
      * No-args constructor for a accountService instantiates a plain accountDAO
      */
     public AccountService()
     {
-        accountDAO = new AccountDAO();
+        this(new AccountDAO());
     }
 
     /**
@@ -21,40 +53,226 @@ public class AccountService
      * @param accountDAO
      */
     public AccountService(AccountDAO accountDAO)
+    {
+        this(accountDAO, PasswordHasher.fromSystemProperties());
+    }
+
+    /**
+     * Constructor for a accountService when an accountDAO and passwordHasher are provided
+     *
+     * @param accountDAO
+     * @param passwordHasher
+     */
+    public AccountService(AccountDAO accountDAO, PasswordHasher passwordHasher)
     {
         this.accountDAO = accountDAO;
+        this.passwordHasher = passwordHasher;
+        this.usernameIndex = new UsernameIndex(accountDAO,
+                Long.getLong("accounts.index.expectedAccounts", 100000),
+                Double.parseDouble(System.getProperty("accounts.index.falsePositiveProbability", "0.01")));
+        this.verifiedLogins = new BoundedCache<>(Integer.getInteger("accounts.login.cacheMaxSize", 10000),
+                Long.getLong("accounts.login.cacheTtlMillis", 60000));
+        new SecureRandom().nextBytes(credentialKey);
     }
 
     /**
-     * Use accountDAO to insert an account to the database
+     * Use accountDAO to insert an account to the database. Whether the username is taken is answered by the username
+     * index, so a registration costs a single insert; the unique constraint on username rejects a concurrent insert
+     * of the same name. The password is stored as a PBKDF2 hash.
      * 
      * @param account, the account to be created
-     * @return the created account
+     * @return the created account, holding the password as it was given
+     * @throws RejectedExecutionException if the password hashing executor is saturated
      */
     public Account createAccount(Account account)
     {
-        if(accountDAO.getAccountByUsername(account.getUsername()) == null)
+        if(account.getUsername().length() == 0 || account.getPassword().length() < 4)
         {
-            if(account.getUsername().length() > 0 && account.getPassword().length() >= 4)
-            {
-                return accountDAO.insertAccount(account);
-            }
+            return null;
+        }
+        if(isUsernameTaken(account.getUsername()))
+        {
+            return null;
+        }
+        String hash = passwordHasher.hash(account.getPassword());
+        Account createdAccount = accountDAO.insertAccount(new Account(account.getUsername(), hash));
+        if(createdAccount == null)
+        {
+            return null;
         }
-        return null;
+        usernameIndex.add(createdAccount.getUsername(), createdAccount.getAccount_id());
+        return new Account(createdAccount.getAccount_id(), account.getUsername(), account.getPassword());
     }
 
     /**
-     * Use accountDAO to login to an account
+     * Use accountDAO to login to an account. A login that matches one verified within the cache's time to live is
+     * accepted without checking the password hash again. Otherwise the stored hash is read and checked on the hashing
+     * executor. A username the index does not hold is still looked up, since the account may have been created by
+     * another instance, and is added to the index if it is found. A password still stored in plaintext, or hashed with
+     * an older iteration count, is rehashed once it has been verified.
      * 
      * @param account, an account object containing the username and password used to attempt the login
-     * @return the account that was logged into
+     * @return the account that was logged into, holding the password as it was given
+     * @throws RejectedExecutionException if the password hashing executor is saturated
      */
     public Account loginAccount(Account account)
     {
-        if(accountDAO.getAccountByUsername(account.getUsername()) != null)
+        String username = account.getUsername();
+        byte[] credential = credentialDigest(username, account.getPassword());
+        VerifiedLogin verified = verifiedLogins.get(username);
+        if(verified != null && MessageDigest.isEqual(verified.credential, credential))
+        {
+            return new Account(verified.account_id, username, account.getPassword());
+        }
+        Account stored = accountDAO.getAccountByUsername(username);
+        if(stored == null)
+        {
+            return null;
+        }
+        if(usernameIndex.isReady() && !usernameIndex.contains(username))
+        {
+            usernameIndex.add(username, stored.getAccount_id());
+        }
+        if(!passwordHasher.verify(account.getPassword(), stored.getPassword()))
+        {
+            return null;
+        }
+        if(passwordHasher.needsRehash(stored.getPassword()))
+        {
+            rehash(stored.getAccount_id(), account.getPassword());
+        }
+        verifiedLogins.put(username, new VerifiedLogin(stored.getAccount_id(), credential));
+        return new Account(stored.getAccount_id(), username, account.getPassword());
+    }
+
+    /**
+     * Whether an account exists, answered from the index's account_id bitmap. An id the bitmap does not hold is
+     * checked with a primary key lookup, since the account may have been created by another instance.
+     *
+     * @param account_id, the id of the account to look for
+     * @return true if the account exists
+     */
+    public boolean accountExists(int account_id)
+    {
+        if(usernameIndex.isReady() && usernameIndex.containsAccountId(account_id))
+        {
+            return true;
+        }
+        return accountDAO.existsById(account_id);
+    }
+
+    /**
+     * Which of several accounts exist. Ids the account_id bitmap does not hold are checked together in one query.
+     *
+     * @param account_ids, the ids of the accounts to look for
+     * @return the ids of the accounts that exist
+     */
+    public Set<Integer> getExistingAccountIds(Collection<Integer> account_ids)
+    {
+        Set<Integer> existing = new HashSet<>();
+        List<Integer> unknown = new ArrayList<>();
+        for(Integer account_id : account_ids)
+        {
+            if(usernameIndex.isReady() && usernameIndex.containsAccountId(account_id))
+            {
+                existing.add(account_id);
+            }
+            else
+            {
+                unknown.add(account_id);
+            }
+        }
+        if(!unknown.isEmpty())
+        {
+            existing.addAll(accountDAO.getExistingAccountIds(unknown));
+        }
+        return existing;
+    }
+
+    /**
+     * @return the index of usernames, for reporting its size and memory footprint
+     */
+    public UsernameIndex getUsernameIndex()
+    {
+        return usernameIndex;
+    }
+
+    /**
+     * @return the password hasher, for reporting its queue and shutting it down
+     */
+    public PasswordHasher getPasswordHasher()
+    {
+        return passwordHasher;
+    }
+
+    /**
+     * Stop the password hashing threads
+     */
+    public void close()
+    {
+        passwordHasher.shutdown();
+    }
+
+    /**
+     * @param username, the username of a new account
+     * @return true if an account already has the username, asking the database only if the index is not ready
+     */
+    private boolean isUsernameTaken(String username)
+    {
+        if(usernameIndex.isReady())
+        {
+            return usernameIndex.contains(username);
+        }
+        return accountDAO.getAccountByUsername(username) != null;
+    }
+
+    /**
+     * Store a fresh hash of a verified password. The login has already succeeded, so if the hashing executor is
+     * saturated the upgrade is left for a later login
+     */
+    private void rehash(int account_id, String password)
+    {
+        try
+        {
+            accountDAO.updatePassword(account_id, passwordHasher.hash(password));
+        }
+        catch(RejectedExecutionException e)
+        {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * @return an HMAC-SHA256 of the username and password under this service's random key
+     */
+    private byte[] credentialDigest(String username, String password)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(credentialKey, "HmacSHA256"));
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        }
+        catch(GeneralSecurityException e)
+        {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    /**
+     * A login that was verified against the stored hash
+     */
+    private static class VerifiedLogin
+    {
+        final int account_id;
+        final byte[] credential;
+
+        VerifiedLogin(int account_id, byte[] credential)
         {
-            return accountDAO.loginAccount(account);
+            this.account_id = account_id;
+            this.credential = credential;
         }
-        return null;
     }
 }
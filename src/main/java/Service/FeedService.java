@@ -0,0 +1,526 @@
+package Service;
+
+import DAO.FollowDAO;
+import Model.Message;
+import Util.BoundedCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The FeedService keeps the follow graph and builds each account's home feed: the newest messages of the accounts it
+ * follows, newest first.
+ *
+ * Feeds are built by a hybrid of fan-out on write and fan-out on read. An author with at most fanOutMaxFollowers
+ * followers has each new message pushed into the feed buffer of every follower whose buffer is in memory. An author
+ * with more followers is not pushed, since one message would touch too many buffers; its newest messages are read
+ * when a feed is requested instead, and merged with the buffer in a k-way merge.
+ *
+ * A feed buffer is a ring holding the newest bufferSize pushed messages of one reader, and is loaded in a single query
+ * the first time the feed is read. The ring is kept in time order rather than arrival order, since time_posted_epoch
+ * is supplied by the client and a message may arrive older than those already held. A buffer remembers which authors
+ * it was loaded for, and is loaded again once the reader's pushed authors change, whether because the reader followed
+ * or unfollowed someone or because an author crossed fanOutMaxFollowers.
+ */
+public class FeedService implements MessageListener
+{
+    private static final Comparator<Message> NEWEST_FIRST = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id).reversed();
+
+    FollowDAO followDAO;
+    AccountService accountService;
+    MessageService messageService;
+    private final int fanOutMaxFollowers;
+    private final int bufferSize;
+    /**
+     * The accounts each reader follows, in ascending order
+     */
+    private final BoundedCache<Integer, List<Integer>> followees;
+    private final BoundedCache<Integer, Integer> followerCounts;
+    /**
+     * The followers of authors with at most fanOutMaxFollowers of them, who are pushed each new message
+     */
+    private final BoundedCache<Integer, List<Integer>> followers;
+    private final BoundedCache<Integer, FeedBuffer> buffers;
+    private final AtomicLong pushes = new AtomicLong();
+
+    /**
+     * Constructor for a feedService configured by the feeds.* system properties: fanOut.maxFollowers (default 1000),
+     * buffer.size (default 500), cache.maxAccounts (default 10000) and cache.ttlMillis (default 300000)
+     *
+     * @param followDAO, reads and writes the follow table
+     * @param accountService, checks that accounts exist
+     * @param messageService, supplies messages and tells this service about every change to them
+     */
+    public FeedService(FollowDAO followDAO, AccountService accountService, MessageService messageService)
+    {
+        this(followDAO, accountService, messageService, Integer.getInteger("feeds.fanOut.maxFollowers", 1000),
+                Integer.getInteger("feeds.buffer.size", 500), Integer.getInteger("feeds.cache.maxAccounts", 10000),
+                Long.getLong("feeds.cache.ttlMillis", 300000));
+    }
+
+    /**
+     * @param followDAO, reads and writes the follow table
+     * @param accountService, checks that accounts exist
+     * @param messageService, supplies messages and tells this service about every change to them
+     * @param fanOutMaxFollowers, the most followers an author may have and still have messages pushed
+     * @param bufferSize, the most messages held in each feed buffer
+     * @param cacheMaxAccounts, the most accounts whose follows, followers and feed buffers are held in memory
+     * @param cacheTtlMillis, how long cached follows and feed buffers stay valid, or 0 for no time limit
+     */
+    public FeedService(FollowDAO followDAO, AccountService accountService, MessageService messageService,
+                       int fanOutMaxFollowers, int bufferSize, int cacheMaxAccounts, long cacheTtlMillis)
+    {
+        this.followDAO = followDAO;
+        this.accountService = accountService;
+        this.messageService = messageService;
+        this.fanOutMaxFollowers = fanOutMaxFollowers;
+        this.bufferSize = bufferSize;
+        this.followees = new BoundedCache<>(cacheMaxAccounts, cacheTtlMillis);
+        this.followerCounts = new BoundedCache<>(cacheMaxAccounts, cacheTtlMillis);
+        this.followers = new BoundedCache<>(cacheMaxAccounts, cacheTtlMillis);
+        this.buffers = new BoundedCache<>(cacheMaxAccounts, cacheTtlMillis);
+        messageService.addListener(this);
+    }
+
+    /**
+     * Make one account follow another. Following an account already followed does nothing.
+     *
+     * @param follower_id, the account that follows
+     * @param followee_id, the account to follow
+     * @return false if the accounts are the same, either does not exist or the follow could not be stored
+     */
+    public boolean follow(int follower_id, int followee_id)
+    {
+        if(!isValidFollow(follower_id, followee_id))
+        {
+            return false;
+        }
+        if(!followDAO.follow(follower_id, followee_id))
+        {
+            return false;
+        }
+        followChanged(follower_id, followee_id);
+        return true;
+    }
+
+    /**
+     * Make one account stop following another. Unfollowing an account not followed does nothing.
+     *
+     * @param follower_id, the account that follows
+     * @param followee_id, the account to stop following
+     * @return false if the accounts are the same, either does not exist or the follow could not be removed
+     */
+    public boolean unfollow(int follower_id, int followee_id)
+    {
+        if(!isValidFollow(follower_id, followee_id))
+        {
+            return false;
+        }
+        if(!followDAO.unfollow(follower_id, followee_id))
+        {
+            return false;
+        }
+        followChanged(follower_id, followee_id);
+        return true;
+    }
+
+    /**
+     * @param account_id, the account that follows
+     * @return the ids of the accounts it follows, in ascending order, or null if they could not be read. The list
+     * must not be modified
+     */
+    public List<Integer> getFollowing(int account_id)
+    {
+        return followees.getOrLoad(account_id, id -> {
+            List<Integer> ids = followDAO.getFolloweeIds(id);
+            return ids == null ? null : Collections.unmodifiableList(ids);
+        });
+    }
+
+    /**
+     * Retrieve the home feed of an account: the newest messages of the accounts it follows, merged from its feed
+     * buffer and the newest messages of each followed author too widely followed to be pushed
+     *
+     * @param account_id, the account reading its feed
+     * @param limit, the most messages to return
+     * @return the messages, ordered by time_posted_epoch and then message_id, both descending, or null if the follows
+     * could not be read
+     */
+    public List<Message> getFeed(int account_id, int limit)
+    {
+        List<Integer> following = getFollowing(account_id);
+        if(following == null)
+        {
+            return null;
+        }
+        Map<Integer, Integer> counts = getFollowerCounts(following);
+        if(counts == null)
+        {
+            return null;
+        }
+        List<Integer> pushed = new ArrayList<>();
+        List<Integer> pulled = new ArrayList<>();
+        for(int followee_id : following)
+        {
+            (counts.get(followee_id) > fanOutMaxFollowers ? pulled : pushed).add(followee_id);
+        }
+        List<List<Message>> sources = new ArrayList<>();
+        if(!pushed.isEmpty())
+        {
+            sources.add(getBuffer(account_id, pushed).newest(limit));
+        }
+        for(int author : pulled)
+        {
+            sources.add(messageService.getLatestMessagesFromUser(author, limit));
+        }
+        return merge(sources, limit);
+    }
+
+    @Override
+    public void messageInserted(Message message)
+    {
+        for(FeedBuffer buffer : bufferedFollowers(message.getPosted_by()))
+        {
+            buffer.add(message);
+            pushes.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void messageUpdated(Message message)
+    {
+        for(FeedBuffer buffer : bufferedFollowers(message.getPosted_by()))
+        {
+            buffer.replace(message);
+        }
+    }
+
+    @Override
+    public void messageDeleted(Message message)
+    {
+        for(FeedBuffer buffer : bufferedFollowers(message.getPosted_by()))
+        {
+            buffer.remove(message);
+        }
+    }
+
+    /**
+     * @return the number of feed buffers held in memory
+     */
+    public int getBufferCount()
+    {
+        return buffers.size();
+    }
+
+    /**
+     * @return the number of messages pushed into feed buffers so far
+     */
+    public long getPushCount()
+    {
+        return pushes.get();
+    }
+
+    private boolean isValidFollow(int follower_id, int followee_id)
+    {
+        return follower_id != followee_id && accountService.accountExists(follower_id)
+                && accountService.accountExists(followee_id);
+    }
+
+    /**
+     * Drop everything cached about either side of a follow that has just been added or removed
+     */
+    private void followChanged(int follower_id, int followee_id)
+    {
+        followees.invalidate(follower_id);
+        buffers.invalidate(follower_id);
+        followerCounts.invalidate(followee_id);
+        followers.invalidate(followee_id);
+    }
+
+    /**
+     * @return the number of followers of each account, from the cache where possible and the rest in one query, or
+     * null if they could not be counted
+     */
+    private Map<Integer, Integer> getFollowerCounts(List<Integer> account_ids)
+    {
+        Map<Integer, Integer> counts = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for(int account_id : account_ids)
+        {
+            Integer count = followerCounts.get(account_id);
+            if(count != null)
+            {
+                counts.put(account_id, count);
+            }
+            else
+            {
+                missing.add(account_id);
+            }
+        }
+        if(!missing.isEmpty())
+        {
+            Map<Integer, Integer> loaded = followDAO.getFollowerCounts(missing);
+            if(loaded == null)
+            {
+                return null;
+            }
+            for(int account_id : missing)
+            {
+                int count = loaded.getOrDefault(account_id, 0);
+                counts.put(account_id, followerCounts.getOrLoad(account_id, id -> count));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the feed buffers in memory of an author's followers, or none if the author has too many followers to
+     * be pushed to
+     */
+    private List<FeedBuffer> bufferedFollowers(int author)
+    {
+        List<FeedBuffer> targets = new ArrayList<>();
+        if(buffers.size() == 0)
+        {
+            return targets;
+        }
+        Map<Integer, Integer> counts = getFollowerCounts(Collections.singletonList(author));
+        if(counts == null || counts.get(author) == 0 || counts.get(author) > fanOutMaxFollowers)
+        {
+            return targets;
+        }
+        List<Integer> follower_ids = followers.getOrLoad(author, followDAO::getFollowerIds);
+        if(follower_ids == null)
+        {
+            return targets;
+        }
+        for(int follower_id : follower_ids)
+        {
+            FeedBuffer buffer = buffers.peek(follower_id);
+            if(buffer != null)
+            {
+                targets.add(buffer);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Return a reader's feed buffer, loading it if it is missing or was loaded for other authors. The new buffer is
+     * made visible to pushes before it is loaded, and holds its lock until it is, so no message is missed and no
+     * reader sees it half loaded
+     */
+    private FeedBuffer getBuffer(int account_id, List<Integer> authors)
+    {
+        FeedBuffer buffer = buffers.get(account_id);
+        if(buffer != null && buffer.authors.equals(authors))
+        {
+            return buffer;
+        }
+        FeedBuffer loaded = new FeedBuffer(authors, bufferSize);
+        synchronized(loaded)
+        {
+            buffers.put(account_id, loaded);
+            for(Message message : messageService.getLatestMessagesFromUsers(authors, bufferSize))
+            {
+                loaded.add(message);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Merge lists that are each newest first into one newest first list of at most limit messages, leaving out
+     * messages that appear in more than one of them
+     */
+    static List<Message> merge(List<List<Message>> sources, int limit)
+    {
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Math.max(1, sources.size()),
+                (a, b) -> NEWEST_FIRST.compare(a.head(), b.head()));
+        for(List<Message> source : sources)
+        {
+            if(!source.isEmpty())
+            {
+                heads.add(new Cursor(source));
+            }
+        }
+        List<Message> merged = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        while(merged.size() < limit && !heads.isEmpty())
+        {
+            Cursor cursor = heads.poll();
+            Message message = cursor.head();
+            if(seen.add(message.getMessage_id()))
+            {
+                merged.add(message);
+            }
+            if(++cursor.position < cursor.messages.size())
+            {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * The next message to take from one newest first list
+     */
+    private static class Cursor
+    {
+        final List<Message> messages;
+        int position = 0;
+
+        Cursor(List<Message> messages)
+        {
+            this.messages = messages;
+        }
+
+        Message head()
+        {
+            return messages.get(position);
+        }
+    }
+
+    /**
+     * The newest messages pushed to one reader, in a ring of capacity slots ordered oldest to newest by
+     * time_posted_epoch and then message_id. A message newer than all those held, which is almost every push, is
+     * appended in constant time, overwriting the oldest once the ring is full. An older one is put in place with a
+     * binary search and a shift, and is dropped if the ring is full and it is older than everything held.
+     */
+    private static class FeedBuffer
+    {
+        final List<Integer> authors;
+        private final Message[] ring;
+        private int start = 0;
+        private int size = 0;
+
+        FeedBuffer(List<Integer> authors, int capacity)
+        {
+            this.authors = authors;
+            this.ring = new Message[Math.max(1, capacity)];
+        }
+
+        synchronized void add(Message message)
+        {
+            if(size == 0 || compare(message, get(size - 1)) > 0)
+            {
+                if(size == ring.length)
+                {
+                    start = (start + 1) % ring.length;
+                    size--;
+                }
+                set(size++, message);
+                return;
+            }
+            int index = indexOf(message);
+            if(index >= 0)
+            {
+                set(index, message);
+                return;
+            }
+            int insertAt = -index - 1;
+            if(size == ring.length)
+            {
+                if(insertAt == 0)
+                {
+                    return;
+                }
+                // drop the oldest to make room, which moves the insertion point down by one
+                start = (start + 1) % ring.length;
+                size--;
+                insertAt--;
+            }
+            for(int i = size; i > insertAt; i--)
+            {
+                set(i, get(i - 1));
+            }
+            set(insertAt, message);
+            size++;
+        }
+
+        synchronized void replace(Message message)
+        {
+            int index = indexOf(message);
+            if(index >= 0)
+            {
+                set(index, message);
+            }
+        }
+
+        synchronized void remove(Message message)
+        {
+            int index = indexOf(message);
+            if(index < 0)
+            {
+                return;
+            }
+            for(int i = index; i < size - 1; i++)
+            {
+                set(i, get(i + 1));
+            }
+            set(--size, null);
+        }
+
+        synchronized List<Message> newest(int limit)
+        {
+            List<Message> newest = new ArrayList<>(Math.min(limit, size));
+            for(int i = size - 1; i >= 0 && newest.size() < limit; i--)
+            {
+                newest.add(get(i));
+            }
+            return newest;
+        }
+
+        /**
+         * @return the position of the message, or (-(insertion point) - 1) if it is not held
+         */
+        private int indexOf(Message message)
+        {
+            int low = 0;
+            int high = size - 1;
+            while(low <= high)
+            {
+                int middle = (low + high) >>> 1;
+                int order = compare(get(middle), message);
+                if(order < 0)
+                {
+                    low = middle + 1;
+                }
+                else if(order > 0)
+                {
+                    high = middle - 1;
+                }
+                else
+                {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private Message get(int position)
+        {
+            return ring[(start + position) % ring.length];
+        }
+
+        private void set(int position, Message message)
+        {
+            ring[(start + position) % ring.length] = message;
+        }
+
+        private static int compare(Message a, Message b)
+        {
+            int byTime = Long.compare(a.getTime_posted_epoch(), b.getTime_posted_epoch());
+            return byTime != 0 ? byTime : Integer.compare(a.getMessage_id(), b.getMessage_id());
+        }
+    }
+}
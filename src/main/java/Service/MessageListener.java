@@ -0,0 +1,24 @@
+package Service;
+
+import Model.Message;
+
+/**
+ * Told about every change the MessageService makes to the message table, once the change has been committed
+ */
+public interface MessageListener
+{
+    /**
+     * @param message, the message that was inserted, with its message_id
+     */
+    void messageInserted(Message message);
+
+    /**
+     * @param message, the message as it is now stored
+     */
+    void messageUpdated(Message message);
+
+    /**
+     * @param message, the message that was deleted
+     */
+    void messageDeleted(Message message);
+}
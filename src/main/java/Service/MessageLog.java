@@ -0,0 +1,528 @@
+package Service;
+
+import Model.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * The MessageLog mirrors every change the MessageService makes to the message table into an append-only file, mapped
+ * into memory with FileChannel.map, so that the in-memory indexes can be rebuilt on startup by a sequential scan of the
+ * file instead of reading every message back through the database.
+ *
+ * The file starts with a header, followed by records of the form length, CRC32, payload. A payload is an insert or
+ * update (type, message_id, posted_by, time_posted_epoch and the UTF-8 text) or a delete (type and message_id). A
+ * record of length 0 marks the end of the log. When the file is opened, records are read until the end or the first
+ * record whose checksum does not match, which is where a write was torn by a crash; anything after it is discarded.
+ *
+ * The only state held on the heap is the offset of the latest record of each live message, by message_id. Updates
+ * and deletes leave superseded records behind; the log is compacted on a background thread, by copying the live
+ * records into a new file that replaces the old one, once the superseded records outweigh the live ones. The mapping
+ * is flushed to disk on the same schedule.
+ *
+ * Whether the log can be trusted on startup is decided by a checkpoint: a random token written into the header, and by
+ * the MessageService into the database, when the log is closed with every change in it. The token is taken, and
+ * cleared from the header, when the log is next used, so a log that was not closed cleanly, or has missed a change,
+ * never carries a token that matches the database.
+ *
+ * A mapping cannot exceed 2GB, which bounds the size of the log.
+ */
+public class MessageLog implements MessageListener
+{
+    private static final long MAGIC = 0x4d53474c4f473031L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    /**
+     * The offset in the header of the checkpoint token
+     */
+    private static final int CHECKPOINT_OFFSET = 12;
+    /**
+     * The length and checksum that precede each payload
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte INSERT = 1;
+    private static final byte UPDATE = 2;
+    private static final byte DELETE = 3;
+    /**
+     * The size of an insert or update payload without its text
+     */
+    private static final int MESSAGE_PAYLOAD_SIZE = 17;
+
+    private final Path path;
+    private final int initialCapacity;
+    private final double compactGarbageRatio;
+    private final ScheduledExecutorService maintenance;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    /**
+     * The offset at which the next record is written
+     */
+    private int end;
+    /**
+     * The offset of the latest record of each live message, by message_id, or 0 if there is none
+     */
+    private int[] latest = new int[1024];
+    private int liveCount = 0;
+    private long liveBytes = 0;
+    private int maxId = 0;
+    /**
+     * Set when a change could not be written, or the log could not be rewritten, so that it is never checkpointed
+     */
+    private boolean incomplete = false;
+
+    /**
+     * Open the log at path, creating it if it does not exist, and read its records
+     *
+     * @param path, the file holding the log
+     * @param initialCapacity, the size the file is mapped at when it is created; it doubles whenever it fills up
+     * @param compactIntervalMillis, how often the log is flushed and checked for compaction, or 0 to never do either
+     *                               in the background
+     * @param compactGarbageRatio, how many bytes of superseded records there may be per byte of live records before
+     *                             the log is compacted
+     * @throws IOException if the file cannot be opened or is not a message log
+     */
+    public MessageLog(Path path, int initialCapacity, long compactIntervalMillis, double compactGarbageRatio)
+            throws IOException
+    {
+        this.path = path;
+        this.initialCapacity = Math.max(HEADER_SIZE + RECORD_HEADER_SIZE, initialCapacity);
+        this.compactGarbageRatio = compactGarbageRatio;
+        open();
+        if(compactIntervalMillis > 0)
+        {
+            this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-log-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            maintenance.scheduleWithFixedDelay(this::maintain, compactIntervalMillis, compactIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            this.maintenance = null;
+        }
+    }
+
+    /**
+     * @return a log configured by the messages.log.* system properties, or null if messages.log.path is not set:
+     * initialSizeBytes (default 64MB), compactIntervalMillis (default 60000) and compactGarbageRatio (default 1.0)
+     * @throws UncheckedIOException if the log cannot be opened
+     */
+    public static MessageLog fromSystemProperties()
+    {
+        String path = System.getProperty("messages.log.path");
+        if(path == null)
+        {
+            return null;
+        }
+        try
+        {
+            return new MessageLog(Paths.get(path), Integer.getInteger("messages.log.initialSizeBytes", 64 << 20),
+                    Long.getLong("messages.log.compactIntervalMillis", 60000),
+                    Double.parseDouble(System.getProperty("messages.log.compactGarbageRatio", "1.0")));
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException("Could not open the message log at " + path, e);
+        }
+    }
+
+    @Override
+    public void messageInserted(Message message)
+    {
+        append(INSERT, message);
+    }
+
+    @Override
+    public void messageUpdated(Message message)
+    {
+        append(UPDATE, message);
+    }
+
+    @Override
+    public void messageDeleted(Message message)
+    {
+        append(DELETE, message);
+    }
+
+    /**
+     * Pass every live message to a consumer, in message_id order, reading each from its latest record
+     *
+     * @param consumer, called once for each message
+     * @return true, so that the log can be used as the source of an index build
+     */
+    public synchronized boolean replay(Consumer<Message> consumer)
+    {
+        for(int id = 0; id <= maxId; id++)
+        {
+            if(latest[id] != 0)
+            {
+                consumer.accept(readMessage(latest[id]));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replace the contents of the log with the messages from a source, such as the database
+     *
+     * @param source, streams every message to the consumer, returning false if it could not read them all
+     * @return false if the source could not be read, in which case the log is left empty
+     */
+    public synchronized boolean rewrite(Predicate<Consumer<Message>> source)
+    {
+        clear();
+        incomplete = false;
+        if(!source.test(message -> append(INSERT, message)))
+        {
+            clear();
+            incomplete = true;
+            return false;
+        }
+        return !incomplete;
+    }
+
+    /**
+     * Take the checkpoint token the log was last closed with, clearing it from the header on disk so that it can only
+     * be used once
+     *
+     * @return the token, or 0 if the log was not checkpointed when it was last closed
+     */
+    public synchronized int takeCheckpoint()
+    {
+        int checkpoint = buffer.getInt(CHECKPOINT_OFFSET);
+        buffer.putInt(CHECKPOINT_OFFSET, 0);
+        buffer.force();
+        return checkpoint;
+    }
+
+    /**
+     * Flush every record to disk and then write a new checkpoint token into the header, to be stored alongside the
+     * database the log mirrors
+     *
+     * @return the token, or 0 if the log has missed a change and must not be trusted
+     */
+    public synchronized int checkpoint()
+    {
+        if(incomplete)
+        {
+            return 0;
+        }
+        int checkpoint = 0;
+        while(checkpoint == 0)
+        {
+            checkpoint = ThreadLocalRandom.current().nextInt();
+        }
+        buffer.force();
+        buffer.putInt(CHECKPOINT_OFFSET, checkpoint);
+        buffer.force();
+        return checkpoint;
+    }
+
+    /**
+     * Copy the live records into a new file, without the records they superseded, and replace the log with it
+     *
+     * @throws IOException if the new file cannot be written, in which case the log is left as it was
+     */
+    public synchronized void compact() throws IOException
+    {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        long size = HEADER_SIZE + liveBytes + RECORD_HEADER_SIZE;
+        if(size > Integer.MAX_VALUE)
+        {
+            throw new IOException("The message log cannot grow past 2GB");
+        }
+        int capacity = (int) Math.max(initialCapacity, Math.min(Integer.MAX_VALUE, size * 2));
+        Files.deleteIfExists(compacted);
+        FileChannel compactedChannel = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer target = compactedChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        writeHeader(target);
+        int position = HEADER_SIZE;
+        int[] compactedLatest = new int[latest.length];
+        for(int id = 0; id <= maxId; id++)
+        {
+            if(latest[id] == 0)
+            {
+                continue;
+            }
+            int length = RECORD_HEADER_SIZE + buffer.getInt(latest[id]);
+            view(target, position, length).put(view(buffer, latest[id], length));
+            compactedLatest[id] = position;
+            position += length;
+        }
+        target.putInt(position, 0);
+        target.force();
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = compactedChannel;
+        buffer = target;
+        latest = compactedLatest;
+        end = position;
+    }
+
+    /**
+     * @return the number of live messages in the log
+     */
+    public synchronized int size()
+    {
+        return liveCount;
+    }
+
+    /**
+     * @return the highest message_id of a live message, or 0 if there are none
+     */
+    public synchronized int getMaxId()
+    {
+        return maxId;
+    }
+
+    /**
+     * @return the bytes of the file taken by records, live or superseded
+     */
+    public synchronized long getLogBytes()
+    {
+        return end - HEADER_SIZE;
+    }
+
+    /**
+     * @return the bytes of the file taken by records that have been superseded
+     */
+    public synchronized long getGarbageBytes()
+    {
+        return end - HEADER_SIZE - liveBytes;
+    }
+
+    /**
+     * Stop the maintenance thread, flush the mapping to disk and close the file
+     */
+    public synchronized void close()
+    {
+        if(maintenance != null)
+        {
+            maintenance.shutdown();
+        }
+        try
+        {
+            buffer.force();
+            channel.close();
+        }
+        catch(IOException e)
+        {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Map the file and read its records, stopping at the end marker or the first torn record
+     */
+    private void open() throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        if(fileSize > Integer.MAX_VALUE)
+        {
+            throw new IOException(path + " is larger than a message log can be");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(fileSize, initialCapacity));
+        if(fileSize == 0)
+        {
+            writeHeader(buffer);
+            end = HEADER_SIZE;
+            buffer.putInt(end, 0);
+            return;
+        }
+        if(buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION)
+        {
+            channel.close();
+            throw new IOException(path + " is not a message log");
+        }
+        end = HEADER_SIZE;
+        while(end + RECORD_HEADER_SIZE <= buffer.capacity())
+        {
+            int length = buffer.getInt(end);
+            if(length <= 0 || length > buffer.capacity() - end - RECORD_HEADER_SIZE
+                    || buffer.getInt(end + 4) != checksum(end + RECORD_HEADER_SIZE, length))
+            {
+                break;
+            }
+            apply(end);
+            end += RECORD_HEADER_SIZE + length;
+        }
+        if(end + 4 <= buffer.capacity())
+        {
+            buffer.putInt(end, 0);
+        }
+    }
+
+    /**
+     * Append a record. A failure to write it is reported and the record dropped, since the change it describes is
+     * already committed to the database; the log is then never checkpointed, so the next start rewrites it
+     */
+    private synchronized void append(byte type, Message message)
+    {
+        byte[] text = type == DELETE ? new byte[0] : message.getMessage_text().getBytes(StandardCharsets.UTF_8);
+        int length = type == DELETE ? 5 : MESSAGE_PAYLOAD_SIZE + text.length;
+        try
+        {
+            ensureCapacity(end + RECORD_HEADER_SIZE + length + 4);
+        }
+        catch(IOException e)
+        {
+            System.out.println(e.getMessage());
+            incomplete = true;
+            return;
+        }
+        int payload = end + RECORD_HEADER_SIZE;
+        buffer.put(payload, type);
+        buffer.putInt(payload + 1, message.getMessage_id());
+        if(type != DELETE)
+        {
+            buffer.putInt(payload + 5, message.getPosted_by());
+            buffer.putLong(payload + 9, message.getTime_posted_epoch());
+            view(buffer, payload + MESSAGE_PAYLOAD_SIZE, text.length).put(text);
+        }
+        buffer.putInt(end + 4, checksum(payload, length));
+        // the terminator goes in before the length, so a reader never sees a record without an end after it
+        buffer.putInt(payload + length, 0);
+        buffer.putInt(end, length);
+        apply(end);
+        end = payload + length;
+    }
+
+    /**
+     * Update the offsets of live messages for the record at an offset
+     */
+    private void apply(int offset)
+    {
+        int length = buffer.getInt(offset);
+        byte type = buffer.get(offset + RECORD_HEADER_SIZE);
+        int id = buffer.getInt(offset + RECORD_HEADER_SIZE + 1);
+        if(id < 0)
+        {
+            return;
+        }
+        if(id >= latest.length)
+        {
+            latest = Arrays.copyOf(latest, Math.max(id + 1, latest.length * 2));
+        }
+        if(latest[id] != 0)
+        {
+            liveBytes -= RECORD_HEADER_SIZE + buffer.getInt(latest[id]);
+            liveCount--;
+        }
+        if(type == DELETE)
+        {
+            latest[id] = 0;
+            while(maxId > 0 && latest[maxId] == 0)
+            {
+                maxId--;
+            }
+            return;
+        }
+        latest[id] = offset;
+        liveBytes += RECORD_HEADER_SIZE + length;
+        liveCount++;
+        maxId = Math.max(maxId, id);
+    }
+
+    private Message readMessage(int offset)
+    {
+        int payload = offset + RECORD_HEADER_SIZE;
+        byte[] text = new byte[buffer.getInt(offset) - MESSAGE_PAYLOAD_SIZE];
+        view(buffer, payload + MESSAGE_PAYLOAD_SIZE, text.length).get(text);
+        return new Message(buffer.getInt(payload + 1), buffer.getInt(payload + 5),
+                new String(text, StandardCharsets.UTF_8), buffer.getLong(payload + 9));
+    }
+
+    /**
+     * Map a larger region of the file when the next record would not fit, doubling its size
+     */
+    private void ensureCapacity(long required) throws IOException
+    {
+        if(required <= buffer.capacity())
+        {
+            return;
+        }
+        if(required > Integer.MAX_VALUE)
+        {
+            throw new IOException("The message log cannot grow past 2GB");
+        }
+        long capacity = Math.min(Integer.MAX_VALUE, Math.max(required, 2L * buffer.capacity()));
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void clear()
+    {
+        Arrays.fill(latest, 0);
+        liveCount = 0;
+        liveBytes = 0;
+        maxId = 0;
+        end = HEADER_SIZE;
+        buffer.putInt(end, 0);
+    }
+
+    private int checksum(int offset, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(view(buffer, offset, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return a view of length bytes of a buffer from offset, with its own position and limit
+     */
+    private static ByteBuffer view(ByteBuffer source, int offset, int length)
+    {
+        ByteBuffer view = source.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view;
+    }
+
+    private static void writeHeader(MappedByteBuffer target)
+    {
+        target.putLong(0, MAGIC);
+        target.putInt(8, VERSION);
+        target.putInt(CHECKPOINT_OFFSET, 0);
+    }
+
+    /**
+     * Flush the mapping, and compact the log once its superseded records outweigh its live ones by the configured
+     * ratio
+     */
+    private synchronized void maintain()
+    {
+        try
+        {
+            buffer.force();
+            if(getGarbageBytes() > liveBytes * compactGarbageRatio)
+            {
+                compact();
+            }
+        }
+        catch(IOException e)
+        {
+            System.out.println(e.getMessage());
+        }
+    }
+}
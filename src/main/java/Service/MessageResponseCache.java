@@ -0,0 +1,183 @@
+package Service;
+
+import Model.Message;
+import Util.BoundedCache;
+import Util.JsonCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.UncheckedIOException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MessageResponseCache holds the JSON body of GET /messages/{message_id} for recently read messages, already
+ * encoded as UTF-8 bytes, so a repeated read is answered by copying one array to the response instead of serializing
+ * the message again.
+ *
+ * Each body is tagged when it is encoded with the next value of a version counter, and the tag is sent as its ETag. The
+ * counter starts again with every process, so the tag also holds a random epoch chosen when the cache is created;
+ * otherwise a restarted or second instance could give a changed message the tag of an older body.
+ *
+ * An entry is invalidated as soon as its message is updated or deleted, and the next read encodes it again under a new
+ * version, so a client holding an old ETag never gets a 304 for a message that has changed. An entry that is evicted or
+ * expires is also encoded under a new version; the client then receives the unchanged body once more, which costs a
+ * transfer but is never wrong.
+ */
+public class MessageResponseCache implements MessageListener
+{
+    MessageService messageService;
+    private final BoundedCache<Integer, EncodedMessage> responses;
+    private final AtomicLong versions = new AtomicLong();
+    private final String epoch = Long.toHexString(new SecureRandom().nextLong());
+
+    /**
+     * Constructor for a cache configured by the messages.responseCache.* system properties: maxSize (default 10000)
+     * and ttlMillis (default 60000)
+     *
+     * @param messageService, supplies messages and tells this cache about every change to them
+     */
+    public MessageResponseCache(MessageService messageService)
+    {
+        this(messageService, Integer.getInteger("messages.responseCache.maxSize", 10000),
+                Long.getLong("messages.responseCache.ttlMillis", 60000));
+    }
+
+    /**
+     * @param messageService, supplies messages and tells this cache about every change to them
+     * @param maxSize, the most encoded messages held at once
+     * @param ttlMillis, how long an encoded message stays valid, or 0 for no time limit
+     */
+    public MessageResponseCache(MessageService messageService, int maxSize, long ttlMillis)
+    {
+        this.messageService = messageService;
+        this.responses = new BoundedCache<>(maxSize, ttlMillis);
+        messageService.addListener(this);
+    }
+
+    /**
+     * @param id, the id of the message to look up
+     * @return the encoded message, or null if there is no such message
+     */
+    public EncodedMessage get(int id)
+    {
+        return responses.getOrLoad(id, this::encode);
+    }
+
+    private EncodedMessage encode(int id)
+    {
+        Message message = messageService.getMessageById(id);
+        if(message == null)
+        {
+            return null;
+        }
+        try
+        {
+            return new EncodedMessage(JsonCodec.MESSAGE_WRITER.writeValueAsBytes(message),
+                    "\"" + epoch + "-" + id + "-" + versions.incrementAndGet() + "\"");
+        }
+        catch(JsonProcessingException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A new message has no encoded body yet, so there is nothing to invalidate
+     */
+    @Override
+    public void messageInserted(Message message)
+    {
+    }
+
+    @Override
+    public void messageUpdated(Message message)
+    {
+        responses.invalidate(message.getMessage_id());
+    }
+
+    @Override
+    public void messageDeleted(Message message)
+    {
+        responses.invalidate(message.getMessage_id());
+    }
+
+    /**
+     * @return the number of reads answered with an already encoded body
+     */
+    public long getHits()
+    {
+        return responses.getHits();
+    }
+
+    /**
+     * @return the number of reads that had to encode the message
+     */
+    public long getMisses()
+    {
+        return responses.getMisses();
+    }
+
+    /**
+     * @return the number of encoded messages currently held
+     */
+    public int size()
+    {
+        return responses.size();
+    }
+
+    /**
+     * The JSON body of one message and the ETag it is sent with. The body must not be modified.
+     */
+    public static class EncodedMessage
+    {
+        private final byte[] json;
+        private final String etag;
+
+        EncodedMessage(byte[] json, String etag)
+        {
+            this.json = json;
+            this.etag = etag;
+        }
+
+        /**
+         * @return the message as UTF-8 JSON
+         */
+        public byte[] getJson()
+        {
+            return json;
+        }
+
+        /**
+         * @return the quoted entity tag identifying this version of the body
+         */
+        public String getEtag()
+        {
+            return etag;
+        }
+
+        /**
+         * @param ifNoneMatch, the value of an If-None-Match request header, or null if there was none
+         * @return true if the header names this version of the body, or is *
+         */
+        public boolean matches(String ifNoneMatch)
+        {
+            if(ifNoneMatch == null)
+            {
+                return false;
+            }
+            for(String tag : ifNoneMatch.split(","))
+            {
+                tag = tag.trim();
+                if(tag.startsWith("W/"))
+                {
+                    tag = tag.substring(2);
+                }
+                if(tag.equals(etag) || tag.equals("*"))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
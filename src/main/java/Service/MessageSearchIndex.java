@@ -0,0 +1,493 @@
+package Service;
+
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The MessageSearchIndex is an inverted index over message_text, so that messages can be searched without reading
+ * them all from the database.
+ *
+ * Text is split into terms at every character that is not a letter or digit, and lower cased. Each term has a
+ * posting list: the ascending message_ids of the messages holding it, in a primitive int array. Each indexed message
+ * also keeps the term ids of its text, so that an update or delete can remove exactly the postings it added, and so
+ * that term frequencies and lengths are at hand for ranking.
+ *
+ * A search returns the messages holding every query term, ranked by BM25 and then newest first.
+ *
+ * The index is built from the database on first use, and kept up to date by the MessageService that owns it as
+ * messages are inserted, updated and deleted. Updates that arrive while it is being built wait for the build, and
+ * are applied afterwards; every update is idempotent, so one that the build already saw does no harm.
+ */
+public class MessageSearchIndex
+{
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int[] NO_TERMS = new int[0];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<PostingList> postings = new ArrayList<>();
+    /**
+     * The term ids of each indexed message's text, by message_id, or null for ids that are not indexed
+     */
+    private int[][] documents = new int[1024][];
+    private int documentCount = 0;
+    private long totalLength = 0;
+    /**
+     * Set once a build has started, so that changes committed after the build began reading are not missed
+     */
+    private volatile boolean started = false;
+    private volatile boolean built = false;
+
+    /**
+     * Build the index if it has not been built yet. Only one caller builds it; the others wait
+     *
+     * @param source, streams every message to the consumer, returning false if it could not read them all
+     * @return false if the index could not be built, in which case it stays empty and the next call tries again
+     */
+    public boolean ensureBuilt(Predicate<Consumer<Message>> source)
+    {
+        if(built)
+        {
+            return true;
+        }
+        lock.writeLock().lock();
+        try
+        {
+            if(built)
+            {
+                return true;
+            }
+            started = true;
+            if(!source.test(this::index))
+            {
+                clear();
+                started = false;
+                return false;
+            }
+            built = true;
+            return true;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true once the index has been built
+     */
+    public boolean isBuilt()
+    {
+        return built;
+    }
+
+    /**
+     * Index a new message, or reindex one whose text has changed. Ignored until a build has started, and applied once
+     * it has finished
+     *
+     * @param message, the message as it is now stored
+     */
+    public void messageInserted(Message message)
+    {
+        if(!started)
+        {
+            return;
+        }
+        lock.writeLock().lock();
+        try
+        {
+            if(built)
+            {
+                index(message);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param message, the message as it is now stored
+     */
+    public void messageUpdated(Message message)
+    {
+        messageInserted(message);
+    }
+
+    /**
+     * @param message, the message that was deleted
+     */
+    public void messageDeleted(Message message)
+    {
+        if(!started)
+        {
+            return;
+        }
+        lock.writeLock().lock();
+        try
+        {
+            if(built)
+            {
+                remove(message.getMessage_id());
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the messages holding every term of the query
+     *
+     * @param query, the text to search for
+     * @param offset, the number of ranked results to skip
+     * @param limit, the most message_ids to return
+     * @return the matching message_ids, best first
+     */
+    public int[] search(String query, int offset, int limit)
+    {
+        lock.readLock().lock();
+        try
+        {
+            int[] queryTerms = lookupTerms(query);
+            if(queryTerms == null || limit <= 0)
+            {
+                return NO_TERMS;
+            }
+            int[] candidates = intersect(queryTerms);
+            return rank(candidates, queryTerms, offset, limit);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param query, the text to search for
+     * @return the number of messages holding every term of the query
+     */
+    public int count(String query)
+    {
+        lock.readLock().lock();
+        try
+        {
+            int[] queryTerms = lookupTerms(query);
+            return queryTerms == null ? 0 : intersect(queryTerms).length;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of messages indexed
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return documentCount;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct terms indexed
+     */
+    public int getTermCount()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return termIds.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Split text into lower cased terms at every character that is not a letter or digit
+     *
+     * @param text, the text to split
+     * @return the terms, in order, including repeats
+     */
+    static List<String> tokenize(String text)
+    {
+        List<String> terms = new ArrayList<>();
+        if(text == null)
+        {
+            return terms;
+        }
+        int start = -1;
+        for(int i = 0; i <= text.length(); i++)
+        {
+            boolean termChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if(termChar && start < 0)
+            {
+                start = i;
+            }
+            else if(!termChar && start >= 0)
+            {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private void index(Message message)
+    {
+        int id = message.getMessage_id();
+        remove(id);
+        List<String> terms = tokenize(message.getMessage_text());
+        int[] documentTerms = new int[terms.size()];
+        for(int i = 0; i < documentTerms.length; i++)
+        {
+            Integer termId = termIds.get(terms.get(i));
+            if(termId == null)
+            {
+                termId = postings.size();
+                termIds.put(terms.get(i), termId);
+                postings.add(new PostingList());
+            }
+            documentTerms[i] = termId;
+            postings.get(termId).add(id);
+        }
+        if(id >= documents.length)
+        {
+            documents = Arrays.copyOf(documents, Math.max(id + 1, documents.length * 2));
+        }
+        documents[id] = documentTerms;
+        documentCount++;
+        totalLength += documentTerms.length;
+    }
+
+    private void remove(int id)
+    {
+        if(id < 0 || id >= documents.length || documents[id] == null)
+        {
+            return;
+        }
+        for(int termId : documents[id])
+        {
+            postings.get(termId).remove(id);
+        }
+        totalLength -= documents[id].length;
+        documents[id] = null;
+        documentCount--;
+    }
+
+    private void clear()
+    {
+        termIds.clear();
+        postings.clear();
+        documents = new int[1024][];
+        documentCount = 0;
+        totalLength = 0;
+    }
+
+    /**
+     * @return the distinct term ids of the query, or null if it has no terms or one of them is not indexed
+     */
+    private int[] lookupTerms(String query)
+    {
+        List<String> terms = tokenize(query);
+        if(terms.isEmpty())
+        {
+            return null;
+        }
+        int[] queryTerms = new int[terms.size()];
+        for(int i = 0; i < queryTerms.length; i++)
+        {
+            Integer termId = termIds.get(terms.get(i));
+            if(termId == null)
+            {
+                return null;
+            }
+            queryTerms[i] = termId;
+        }
+        return Arrays.stream(queryTerms).distinct().toArray();
+    }
+
+    /**
+     * Intersect the posting lists of the terms, shortest first, so the work is bounded by the rarest term
+     */
+    private int[] intersect(int[] queryTerms)
+    {
+        PostingList[] lists = new PostingList[queryTerms.length];
+        for(int i = 0; i < queryTerms.length; i++)
+        {
+            lists[i] = postings.get(queryTerms[i]);
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+        for(int i = 1; i < lists.length && result.length > 0; i++)
+        {
+            int kept = 0;
+            for(int id : result)
+            {
+                if(Arrays.binarySearch(lists[i].ids, 0, lists[i].size, id) >= 0)
+                {
+                    result[kept++] = id;
+                }
+            }
+            result = Arrays.copyOf(result, kept);
+        }
+        return result;
+    }
+
+    /**
+     * Score the candidates with BM25 and keep the best offset + limit of them in a heap
+     */
+    private int[] rank(int[] candidates, int[] queryTerms, int offset, int limit)
+    {
+        int wanted = (int) Math.min((long) offset + limit, candidates.length);
+        if(wanted <= offset)
+        {
+            return NO_TERMS;
+        }
+        double[] idf = new double[queryTerms.length];
+        for(int i = 0; i < queryTerms.length; i++)
+        {
+            int df = postings.get(queryTerms[i]).size;
+            idf[i] = Math.log(1 + (documentCount - df + 0.5) / (df + 0.5));
+        }
+        double averageLength = documentCount == 0 ? 1 : (double) totalLength / documentCount;
+
+        // the worst of the kept results is at the head, so it can be replaced by a better candidate
+        PriorityQueue<ScoredId> best = new PriorityQueue<>(wanted + 1);
+        for(int id : candidates)
+        {
+            int[] documentTerms = documents[id];
+            double lengthNorm = K1 * (1 - B + B * documentTerms.length / averageLength);
+            double score = 0;
+            for(int i = 0; i < queryTerms.length; i++)
+            {
+                int tf = 0;
+                for(int termId : documentTerms)
+                {
+                    if(termId == queryTerms[i])
+                    {
+                        tf++;
+                    }
+                }
+                score += idf[i] * tf * (K1 + 1) / (tf + lengthNorm);
+            }
+            if(best.size() < wanted)
+            {
+                best.add(new ScoredId(id, score));
+            }
+            else if(best.peek().isBelow(id, score))
+            {
+                best.poll();
+                best.add(new ScoredId(id, score));
+            }
+        }
+        ScoredId[] ranked = best.toArray(new ScoredId[0]);
+        Arrays.sort(ranked, (a, b) -> b.compareTo(a));
+        int[] page = new int[ranked.length - offset];
+        for(int i = 0; i < page.length; i++)
+        {
+            page[i] = ranked[offset + i].id;
+        }
+        return page;
+    }
+
+    /**
+     * The ascending message_ids holding a term
+     */
+    private static class PostingList
+    {
+        int[] ids = new int[4];
+        int size = 0;
+
+        void add(int id)
+        {
+            // ids are mostly added in ascending order, so this is usually an append
+            if(size > 0 && ids[size - 1] >= id)
+            {
+                int index = Arrays.binarySearch(ids, 0, size, id);
+                if(index >= 0)
+                {
+                    return;
+                }
+                insertAt(-index - 1, id);
+                return;
+            }
+            insertAt(size, id);
+        }
+
+        void remove(int id)
+        {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if(index >= 0)
+            {
+                System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+                size--;
+            }
+        }
+
+        private void insertAt(int index, int id)
+        {
+            if(size == ids.length)
+            {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+    }
+
+    /**
+     * A candidate and its score. Ties are broken in favour of the newer message
+     */
+    private static class ScoredId implements Comparable<ScoredId>
+    {
+        final int id;
+        final double score;
+
+        ScoredId(int id, double score)
+        {
+            this.id = id;
+            this.score = score;
+        }
+
+        /**
+         * @return true if this ranks below a candidate with the given id and score
+         */
+        boolean isBelow(int otherId, double otherScore)
+        {
+            int byScore = Double.compare(score, otherScore);
+            return byScore != 0 ? byScore < 0 : id < otherId;
+        }
+
+        @Override
+        public int compareTo(ScoredId other)
+        {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Integer.compare(id, other.id);
+        }
+    }
+}
@@ -1,20 +1,84 @@
 package Service;
 
+import Model.BatchItemResult;
 import Model.Message;
+import DAO.ColumnarMessageDAO;
 import DAO.MessageDAO;
+import Util.BoundedCache;
+import Util.LockStripes;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 public class MessageService
 {
     MessageDAO messageDAO;
+    /**
+     * Answers whether the authors of new messages exist, from its in-memory account_id bitmap
+     */
+    AccountService accountService;
+    /**
+     * Messages by message_id. Size and time to live are set by the messages.cache.maxSize and
+     * messages.cache.ttlMillis system properties. Cached messages are shared, so they must not be modified.
+     */
+    BoundedCache<Integer, Message> messageCache;
+    /**
+     * Each account's messages, oldest first. Sized by the messages.timeline.maxAccounts,
+     * messages.timeline.maxLength and messages.timeline.ttlMillis system properties.
+     */
+    TimelineCache timelineCache;
+    /**
+     * An inverted index over message_text, built on the first search and kept up to date as messages change
+     */
+    MessageSearchIndex searchIndex = new MessageSearchIndex();
+    /**
+     * Every message posted within the last messages.recent.windowSeconds (default 3600), in buckets of
+     * messages.recent.bucketSeconds (default 60), loaded on the first time range query
+     */
+    RecentMessageWindow recentWindow = new RecentMessageWindow(Long.getLong("messages.recent.windowSeconds", 3600),
+            Long.getLong("messages.recent.bucketSeconds", 60), () -> System.currentTimeMillis() / 1000);
+    /**
+     * Told about every committed change, after the caches and indexes above
+     */
+    private final List<MessageListener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * Held across the write and the cache and listener updates of an update or delete, and while a write-behind insert
+     * is applied to them, so concurrent changes to one message reach the caches, indexes and listeners in the order
+     * the database made them
+     */
+    private final LockStripes writeOrder = new LockStripes(64);
+    /**
+     * The ids of messages queued on the write-behind whose insert has not yet reached the caches, indexes and
+     * listeners. An update or delete that finds its id here applies itself in place of the insert
+     */
+    private final Set<Integer> awaitingInsert = ConcurrentHashMap.newKeySet();
+    /**
+     * Writes new messages in the background when messages.writeBehind is true, otherwise null
+     */
+    MessageWriteBehind writeBehind;
+    /**
+     * Mirrors every change into a memory-mapped file when messages.log.path is set, otherwise null
+     */
+    MessageLog messageLog;
 
     /**
-     * No-args constructor for a messageService instantiates a plain messageDAO
+     * No-args constructor for a messageService instantiates the messageDAO selected by the messages.store system
+     * property
      */
     public MessageService()
     {
-        messageDAO = new MessageDAO();
+        this(MessageDAO.fromSystemProperties());
     }
 
     /**
@@ -23,26 +87,237 @@ public class MessageService
      * @param messageDAO
      */
     public MessageService(MessageDAO messageDAO)
+    {
+        this(messageDAO, new AccountService());
+    }
+
+    /**
+     * Constructor for a messageService when both a messageDAO and an accountService are provided
+     * 
+     * @param messageDAO
+     * @param accountService, used to check that the authors of new messages exist
+     */
+    public MessageService(MessageDAO messageDAO, AccountService accountService)
+    {
+        this(messageDAO, accountService, MessageWriteBehind.fromSystemProperties(messageDAO));
+    }
+
+    /**
+     * Constructor for a messageService which writes new messages through a write-behind queue
+     * 
+     * @param messageDAO
+     * @param accountService, used to check that the authors of new messages exist
+     * @param writeBehind, the queue new messages are written through, or null to write them directly
+     */
+    public MessageService(MessageDAO messageDAO, AccountService accountService, MessageWriteBehind writeBehind)
+    {
+        this(messageDAO, accountService, writeBehind, MessageLog.fromSystemProperties());
+    }
+
+    /**
+     * Constructor for a messageService which mirrors every change into a message log. The in-memory indexes are
+     * rebuilt from the log straight away
+     * 
+     * @param messageDAO
+     * @param accountService, used to check that the authors of new messages exist
+     * @param writeBehind, the queue new messages are written through, or null to write them directly
+     * @param messageLog, the log changes are mirrored into, or null for none
+     */
+    public MessageService(MessageDAO messageDAO, AccountService accountService, MessageWriteBehind writeBehind,
+                          MessageLog messageLog)
     {
         this.messageDAO = messageDAO;
+        this.accountService = accountService;
+        this.messageCache = new BoundedCache<>(Integer.getInteger("messages.cache.maxSize", 10000),
+                Long.getLong("messages.cache.ttlMillis", 60000));
+        this.timelineCache = new TimelineCache(Integer.getInteger("messages.timeline.maxAccounts", 10000),
+                Integer.getInteger("messages.timeline.maxLength", 1000),
+                Long.getLong("messages.timeline.ttlMillis", 300000));
+        this.writeBehind = writeBehind;
+        this.messageLog = messageLog;
+        if(messageLog != null)
+        {
+            warmFromLog();
+            addListener(messageLog);
+        }
     }
 
     /**
-     * Use messageDAO to add a new message to the database
+     * Use messageDAO to add a new message to the database. The author is checked against the accountService's
+     * account_id bitmap, so a message by an existing author costs the insert alone; the foreign key on posted_by
+     * still guards the insert itself.
+     * 
+     * With a write-behind queue, the author is checked and the message queued with its reserved message_id instead.
+     * Depending on the queue's durability, the message is returned once its batch has committed or as soon as it is
+     * queued; in the latter case it can be read back by id straight away, but appears in other queries only once
+     * written.
      * 
      * @param message, new message to be inserted to the database
      * @return the inserted message
+     * @throws java.util.concurrent.RejectedExecutionException if the write-behind queue is full, or the message was
+     * not committed within the write-behind's commit timeout
      */
     public Message insertMessage(Message message)
     {
-        if(messageDAO.getMessagesByUser(message.getPosted_by()) != null)
+        return insertMessage(message, false);
+    }
+
+    /**
+     * Use messageDAO to add a new message to the database, as insertMessage(message), skipping the author check when
+     * the author is already known to exist, eg because the request carried a session token for the author.
+     *
+     * @param message, new message to be inserted to the database
+     * @param authorVerified, true if posted_by is known to be an existing account
+     * @return the inserted message
+     * @throws java.util.concurrent.RejectedExecutionException if the write-behind queue is full, or the message was
+     * not committed within the write-behind's commit timeout
+     */
+    public Message insertMessage(Message message, boolean authorVerified)
+    {
+        if(!isValidText(message.getMessage_text()))
+        {
+            return null;
+        }
+        if(writeBehind != null)
+        {
+            return insertMessageWriteBehind(message, authorVerified);
+        }
+        if(!authorVerified && !accountService.accountExists(message.getPosted_by()))
+        {
+            return null;
+        }
+        Message addedMessage = messageDAO.insertMessage(message);
+        if(addedMessage != null)
+        {
+            messageCache.put(addedMessage.getMessage_id(), addedMessage);
+            afterInsert(addedMessage);
+        }
+        return addedMessage;
+    }
+
+    private Message insertMessageWriteBehind(Message message, boolean authorVerified)
+    {
+        if(!authorVerified && !accountService.accountExists(message.getPosted_by()))
+        {
+            return null;
+        }
+        boolean enqueueDurability = writeBehind.getDurability() == MessageWriteBehind.Durability.ENQUEUE;
+        MessageWriteBehind.PendingMessage pending = writeBehind.submit(message, reserved -> {
+            awaitingInsert.add(reserved.getMessage_id());
+            if(enqueueDurability)
+            {
+                messageCache.put(reserved.getMessage_id(), reserved);
+            }
+        });
+        if(pending == null)
+        {
+            return null;
+        }
+        Message queuedMessage = pending.getMessage();
+        if(enqueueDurability)
+        {
+            pending.getCommitted().thenAccept(committed -> insertWritten(queuedMessage, committed));
+            return queuedMessage;
+        }
+        boolean committed;
+        try
+        {
+            committed = writeBehind.awaitCommit(pending);
+        }
+        catch(RejectedExecutionException e)
+        {
+            // the caller is answered 503, but the message stays queued and may still be written
+            pending.getCommitted().thenAccept(lateCommit -> insertWritten(queuedMessage, lateCommit));
+            throw e;
+        }
+        insertWritten(queuedMessage, committed);
+        return committed ? queuedMessage : null;
+    }
+
+    /**
+     * Bring the caches, indexes and listeners up to date once the write-behind has written, or failed to write, a
+     * queued message. Nothing is done if the message has been updated or deleted since it was committed, since that
+     * change has already been applied in its place.
+     */
+    private void insertWritten(Message message, boolean committed)
+    {
+        int id = message.getMessage_id();
+        synchronized(writeOrder.get(id))
         {
-            if(message.getMessage_text().length() > 0 && message.getMessage_text().length() < 255)
+            if(!awaitingInsert.remove(id))
+            {
+                return;
+            }
+            if(committed)
+            {
+                messageCache.put(id, message);
+                afterInsert(message);
+            }
+            else
             {
-                return messageDAO.insertMessage(message);
+                messageCache.invalidate(id);
             }
         }
-        return null;
+    }
+
+    /**
+     * Insert many messages at once. Every item is validated first, checking all of the authors with a single query;
+     * the valid items are then inserted together in one transaction. Each item gets its own result, so one bad item
+     * does not prevent the others from being inserted.
+     * 
+     * @param messages, the new messages to be inserted to the database
+     * @return one result per message, in the same order, holding either the inserted message or an error
+     */
+    public List<BatchItemResult> insertMessages(List<Message> messages)
+    {
+        Set<Integer> authors = new HashSet<>();
+        for(Message message : messages)
+        {
+            if(message != null)
+            {
+                authors.add(message.getPosted_by());
+            }
+        }
+        Set<Integer> existingAuthors = accountService.getExistingAccountIds(authors);
+
+        BatchItemResult[] results = new BatchItemResult[messages.size()];
+        List<Message> valid = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for(int i = 0; i < messages.size(); i++)
+        {
+            Message message = messages.get(i);
+            if(message == null || !isValidText(message.getMessage_text()))
+            {
+                results[i] = BatchItemResult.failure(i, "message_text must be between 1 and 254 characters");
+            }
+            else if(!existingAuthors.contains(message.getPosted_by()))
+            {
+                results[i] = BatchItemResult.failure(i, "posted_by does not refer to an existing account");
+            }
+            else
+            {
+                valid.add(message);
+                validIndexes.add(i);
+            }
+        }
+
+        List<Message> inserted = messageDAO.insertMessages(valid);
+        for(int i = 0; i < validIndexes.size(); i++)
+        {
+            int index = validIndexes.get(i);
+            if(inserted == null)
+            {
+                results[index] = BatchItemResult.failure(index, "the batch could not be inserted");
+            }
+            else
+            {
+                Message addedMessage = inserted.get(i);
+                messageCache.put(addedMessage.getMessage_id(), addedMessage);
+                afterInsert(addedMessage);
+                results[index] = BatchItemResult.success(index, addedMessage);
+            }
+        }
+        return List.of(results);
     }
 
     /**
@@ -56,64 +331,406 @@ public class MessageService
     }
 
     /**
-     * Use messageDAO to retrieve a message by its message_id
+     * Use messageDAO to retrieve one page of messages following a cursor
+     *
+     * @param after_id, the message_id of the last message on the previous page, or 0 for the first page
+     * @param limit, the maximum number of messages to return
+     * @return up to limit messages, ordered by message_id
+     */
+    public List<Message> getMessagesAfter(int after_id, int limit)
+    {
+        return messageDAO.getMessagesAfter(after_id, limit);
+    }
+
+    /**
+     * Use messageDAO to stream every message following a cursor to a consumer, without collecting them in a list
+     *
+     * @param after_id, only messages with a greater message_id are streamed. Use 0 for all messages
+     * @param consumer, called once for each message, in message_id order
+     * @return false if the messages could not all be read, in which case the consumer may have seen some of them
+     */
+    public boolean streamMessagesAfter(int after_id, Consumer<Message> consumer)
+    {
+        return messageDAO.streamMessagesAfter(after_id, consumer);
+    }
+
+    /**
+     * Retrieve a message by its message_id, from the message cache if possible and otherwise through messageDAO
      * 
      * @param id, the message_id of the message being retrieved
      * @return the message being retrieved
      */
     public Message getMessageById(int id)
     {
-        if((Integer) id != null)
-        {
-            return messageDAO.getMessageById(id);
-        }
-        return null;
+        return messageCache.getOrLoad(id, messageDAO::getMessageById);
     }
 
     /**
-     * Use messageDAO to delete a message given its message_id
+     * Use messageDAO to delete a message given its message_id. The DAO returns the row it deleted, so no lookup is
+     * needed beforehand.
      * 
      * @param id, the id of the message to be deleted
-     * @return the deleted message
+     * @return the deleted message, or null if there was no such message
      */
     public Message deleteMessage(int id)
     {
-        if(messageDAO.getMessageById(id) != null)
+        synchronized(writeOrder.get(id))
         {
-            return messageDAO.deleteMessageById(id);
+            Message deletedMessage = messageDAO.deleteMessageById(id);
+            messageCache.invalidate(id);
+            // a queued insert whose callbacks have not run yet was never seen by the indexes and listeners
+            if(deletedMessage != null && !awaitingInsert.remove(id))
+            {
+                afterDelete(deletedMessage);
+            }
+            return deletedMessage;
         }
-        return null;
     }
 
     /**
-     * Use messageDAO to update a message
+     * Use messageDAO to update a message. The DAO returns the row as it is after the update, so no lookup is needed
+     * before or after it.
      * 
      * @param id, the id of the message to be updated
      * @param message, the message object containing the updated information
-     * @return the updated message
+     * @return the updated message, or null if the text is invalid or there was no such message
      */
     public Message updateMessage(int id, Message message)
     {
-        if(messageDAO.getMessageById(id) != null)
+        if(!isValidText(message.getMessage_text()))
+        {
+            return null;
+        }
+        synchronized(writeOrder.get(id))
         {
-            if(message.getMessage_text().length() > 0 && message.getMessage_text().length() < 255)
+            Message updatedMessage = messageDAO.updateMessage(id, message);
+            if(updatedMessage == null)
+            {
+                messageCache.invalidate(id);
+                return null;
+            }
+            messageCache.put(id, updatedMessage);
+            if(awaitingInsert.remove(id))
+            {
+                afterInsert(updatedMessage);
+            }
+            else
             {
-                messageDAO.updateMessage(id, message);
-                return messageDAO.getMessageById(id);
+                afterUpdate(updatedMessage);
             }
+            return updatedMessage;
         }
-        return null;
     }
 
     /**
-     * Use messageDAO to retrieve all messages from a specific account
+     * Retrieve all messages from a specific account, oldest first, from the timeline cache if possible and otherwise
+     * through messageDAO
      * 
      * @param user_id, the account id of the user
-     * @return a list of messages from the account
+     * @return a list of messages from the account. The list must not be modified
      */
     public List<Message> getAllMessagesFromUser(int user_id)
     {
-        return messageDAO.getMessagesByUser(user_id);
+        return timelineCache.getTimeline(user_id, messageDAO::getMessagesByUser);
+    }
+
+    /**
+     * Retrieve the newest messages of an account, newest first, from its cached timeline if there is one and
+     * otherwise through messageDAO
+     *
+     * @param user_id, the account id of the user
+     * @param limit, the most messages to return
+     * @return the account's newest messages, ordered by time_posted_epoch and then message_id, both descending
+     */
+    public List<Message> getLatestMessagesFromUser(int user_id, int limit)
+    {
+        List<Message> timeline = timelineCache.getCache().peek(user_id);
+        if(timeline == null)
+        {
+            return messageDAO.getLatestMessagesByUsers(Collections.singletonList(user_id), limit);
+        }
+        List<Message> messages = new ArrayList<>(timeline);
+        messages.sort(Comparator.comparingLong(Message::getTime_posted_epoch)
+                .thenComparingInt(Message::getMessage_id).reversed());
+        return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+    }
+
+    /**
+     * Retrieve the newest messages posted by any of several accounts, newest first, in one query
+     *
+     * @param user_ids, the account ids of the users
+     * @param limit, the most messages to return
+     * @return the newest messages, ordered by time_posted_epoch and then message_id, both descending
+     */
+    public List<Message> getLatestMessagesFromUsers(Collection<Integer> user_ids, int limit)
+    {
+        return messageDAO.getLatestMessagesByUsers(user_ids, limit);
+    }
+
+    /**
+     * Retrieve the messages posted within a time range, oldest first. A range within the recent window is answered
+     * from memory; any other goes to the database through the time_posted_epoch index.
+     *
+     * @param since, the earliest time_posted_epoch to include
+     * @param until, the time_posted_epoch to stop before
+     * @param limit, the most messages to return
+     * @return the messages posted in the range, ordered by time_posted_epoch and then message_id
+     */
+    public List<Message> getMessagesBetween(long since, long until, int limit)
+    {
+        if(recentWindow.ensureLoaded(messageDAO::streamMessagesSince))
+        {
+            List<Message> recent = recentWindow.getMessagesBetween(null, since, until, limit);
+            if(recent != null)
+            {
+                return recent;
+            }
+        }
+        return messageDAO.getMessagesBetween(since, until, limit);
+    }
+
+    /**
+     * Retrieve the messages a user posted within a time range, oldest first. The range is answered from the recent
+     * window or the user's cached timeline when either holds it, and from the database otherwise.
+     *
+     * @param user_id, the account_id of the poster
+     * @param since, the earliest time_posted_epoch to include
+     * @param until, the time_posted_epoch to stop before
+     * @return the user's messages posted in the range, ordered by time_posted_epoch and then message_id
+     */
+    public List<Message> getMessagesFromUserBetween(int user_id, long since, long until)
+    {
+        if(recentWindow.ensureLoaded(messageDAO::streamMessagesSince))
+        {
+            List<Message> recent = recentWindow.getMessagesBetween(user_id, since, until, Integer.MAX_VALUE);
+            if(recent != null)
+            {
+                return recent;
+            }
+        }
+        List<Message> timeline = timelineCache.getCache().peek(user_id);
+        if(timeline != null)
+        {
+            List<Message> messages = new ArrayList<>();
+            for(Message message : timeline)
+            {
+                if(message.getTime_posted_epoch() >= since && message.getTime_posted_epoch() < until)
+                {
+                    messages.add(message);
+                }
+            }
+            messages.sort(Comparator.comparingLong(Message::getTime_posted_epoch)
+                    .thenComparingInt(Message::getMessage_id));
+            return messages;
+        }
+        return messageDAO.getMessagesByUserBetween(user_id, since, until);
+    }
+
+    /**
+     * Search messages by their text. The search index is built from the database on the first search. Messages are
+     * read from the message cache where possible, and the rest in a single query.
+     *
+     * @param query, the text to search for; every term must appear in a matching message
+     * @param offset, the number of ranked results to skip
+     * @param limit, the most messages to return
+     * @return the matching messages, best first, or null if the search index could not be built
+     */
+    public List<Message> searchMessages(String query, int offset, int limit)
+    {
+        if(!searchIndex.ensureBuilt(consumer -> messageDAO.streamMessagesAfter(0, consumer)))
+        {
+            return null;
+        }
+        int[] ids = searchIndex.search(query, offset, limit);
+        Map<Integer, Message> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for(int id : ids)
+        {
+            Message cached = messageCache.get(id);
+            if(cached != null)
+            {
+                found.put(id, cached);
+            }
+            else
+            {
+                missing.add(id);
+            }
+        }
+        for(Message message : messageDAO.getMessagesByIds(missing))
+        {
+            found.put(message.getMessage_id(), message);
+        }
+        List<Message> messages = new ArrayList<>(ids.length);
+        for(int id : ids)
+        {
+            // a message deleted since the search is left out
+            Message message = found.get(id);
+            if(message != null)
+            {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @param listener, told about every message inserted, updated or deleted from now on
+     */
+    public void addListener(MessageListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    private void afterInsert(Message message)
+    {
+        timelineCache.messageInserted(message);
+        searchIndex.messageInserted(message);
+        recentWindow.messageInserted(message);
+        for(MessageListener listener : listeners)
+        {
+            listener.messageInserted(message);
+        }
+    }
+
+    private void afterUpdate(Message message)
+    {
+        timelineCache.messageUpdated(message);
+        searchIndex.messageUpdated(message);
+        recentWindow.messageUpdated(message);
+        for(MessageListener listener : listeners)
+        {
+            listener.messageUpdated(message);
+        }
+    }
+
+    private void afterDelete(Message message)
+    {
+        timelineCache.messageDeleted(message);
+        searchIndex.messageDeleted(message);
+        recentWindow.messageDeleted(message);
+        for(MessageListener listener : listeners)
+        {
+            listener.messageDeleted(message);
+        }
+    }
+
+    /**
+     * Rebuild the columnar store, the search index and the recent window by scanning the message log, rather than
+     * reading every message through the database. The log is only trusted if it was checkpointed when it was last
+     * closed, with the same token the database holds, and holds as many messages as the database up to the same
+     * message_id. A crash, a change the log missed or a recreated schema all leave the tokens different, and the log
+     * is then rewritten from the database first.
+     */
+    private void warmFromLog()
+    {
+        int checkpoint = messageLog.takeCheckpoint();
+        int[] countAndMaxId = messageDAO.getMessageCountAndMaxId();
+        if(checkpoint == 0 || checkpoint != messageDAO.getLogCheckpoint() || countAndMaxId == null
+                || countAndMaxId[0] != messageLog.size() || countAndMaxId[1] != messageLog.getMaxId())
+        {
+            if(!messageLog.rewrite(consumer -> messageDAO.streamMessagesAfter(0, consumer)))
+            {
+                return;
+            }
+        }
+        if(messageDAO instanceof ColumnarMessageDAO)
+        {
+            ((ColumnarMessageDAO) messageDAO).ensureLoaded(messageLog::replay);
+        }
+        searchIndex.ensureBuilt(messageLog::replay);
+        recentWindow.ensureLoaded((since, consumer) -> messageLog.replay(message -> {
+            if(message.getTime_posted_epoch() >= since)
+            {
+                consumer.accept(message);
+            }
+        }));
+    }
+
+    /**
+     * @param message_text, the text of a new or updated message
+     * @return true if the text is not blank and under 255 characters
+     */
+    private boolean isValidText(String message_text)
+    {
+        return message_text != null && message_text.length() > 0 && message_text.length() < 255;
+    }
+
+    /**
+     * Write every message still waiting in the write-behind queue and stop its writer, then checkpoint and close the
+     * message log, storing its checkpoint token in the database. Does nothing if messages are written directly and not
+     * logged.
+     */
+    public void close()
+    {
+        if(writeBehind != null)
+        {
+            writeBehind.close(Long.getLong("messages.writeBehind.closeTimeoutMillis", 10000));
+        }
+        if(messageLog != null)
+        {
+            int checkpoint = messageLog.checkpoint();
+            if(checkpoint != 0)
+            {
+                messageDAO.setLogCheckpoint(checkpoint);
+            }
+            messageLog.close();
+        }
+    }
+
+    /**
+     * @return the DAO messages are read and written through
+     */
+    public MessageDAO getMessageDAO()
+    {
+        return messageDAO;
+    }
+
+    /**
+     * @return the write-behind queue new messages are written through, or null if they are written directly
+     */
+    public MessageWriteBehind getWriteBehind()
+    {
+        return writeBehind;
+    }
+
+    /**
+     * @return the log changes are mirrored into, or null if there is none
+     */
+    public MessageLog getMessageLog()
+    {
+        return messageLog;
+    }
+
+    /**
+     * @return the cache of messages by message_id, for reporting its statistics
+     */
+    public BoundedCache<Integer, Message> getMessageCache()
+    {
+        return messageCache;
+    }
+
+    /**
+     * @return the cache of timelines by account, for reporting its hit ratio and memory footprint
+     */
+    public TimelineCache getTimelineCache()
+    {
+        return timelineCache;
+    }
+
+    /**
+     * @return the window of recent messages, for reporting its size
+     */
+    public RecentMessageWindow getRecentWindow()
+    {
+        return recentWindow;
+    }
+
+    /**
+     * @return the search index, for reporting its size
+     */
+    public MessageSearchIndex getSearchIndex()
+    {
+        return searchIndex;
     }
 }
 
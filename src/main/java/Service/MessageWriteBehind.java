@@ -0,0 +1,344 @@
+package Service;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * The MessageWriteBehind accepts new messages without waiting for the database, and writes them from a single
+ * background thread in group-committed batches: every message that arrives while a batch is being written goes into
+ * the next one, so under load many inserts share one commit.
+ *
+ * Each message is given its message_id when it is submitted, from the block of ids the MessageDAO has reserved from
+ * the message_id sequence, so the caller knows the id before the row is written.
+ *
+ * The queue is bounded. Producers reserve a slot with a compare-and-set on the queue size and never take a lock; when
+ * the queue is full they wait up to offerTimeoutMillis for room and are then rejected with a
+ * RejectedExecutionException.
+ *
+ * With COMMIT durability a caller waits up to commitTimeoutMillis for its batch to commit, and is then rejected with a
+ * RejectedExecutionException as well. The message stays queued, and may still be written after the caller gives up.
+ *
+ * If a batch fails, its messages are retried one at a time so that one bad row does not fail the others.
+ */
+public class MessageWriteBehind
+{
+    /**
+     * When a submitted message is acknowledged to the caller
+     */
+    public enum Durability {
+        /**
+         * Once the batch holding the message has been committed
+         */
+        COMMIT,
+        /**
+         * As soon as the message is queued. A message acknowledged this way is lost if the process stops before the
+         * writer reaches it
+         */
+        ENQUEUE
+    }
+
+    private final MessageDAO messageDAO;
+    private final int capacity;
+    private final int batchSize;
+    private final long offerTimeoutNanos;
+    private final long commitTimeoutMillis;
+    private final Durability durability;
+
+    private final ConcurrentLinkedQueue<PendingMessage> queue = new ConcurrentLinkedQueue<>();
+    /**
+     * The number of messages being submitted, queued or being written. Only ever raised up to capacity
+     */
+    private final AtomicInteger size = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * @param messageDAO, used to reserve ids and write the batches
+     * @param capacity, the most messages that may wait to be written
+     * @param batchSize, the most messages written in one transaction
+     * @param offerTimeoutMillis, how long a submit waits for room in a full queue before it is rejected
+     * @param durability, when a submitted message is acknowledged
+     */
+    public MessageWriteBehind(MessageDAO messageDAO, int capacity, int batchSize,
+                              long offerTimeoutMillis, Durability durability)
+    {
+        this(messageDAO, capacity, batchSize, offerTimeoutMillis, 5000, durability);
+    }
+
+    /**
+     * @param messageDAO, used to reserve ids and write the batches
+     * @param capacity, the most messages that may wait to be written
+     * @param batchSize, the most messages written in one transaction
+     * @param offerTimeoutMillis, how long a submit waits for room in a full queue before it is rejected
+     * @param commitTimeoutMillis, how long awaitCommit waits for a message's batch to commit before it is rejected
+     * @param durability, when a submitted message is acknowledged
+     */
+    public MessageWriteBehind(MessageDAO messageDAO, int capacity, int batchSize,
+                              long offerTimeoutMillis, long commitTimeoutMillis, Durability durability)
+    {
+        this.messageDAO = messageDAO;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+        this.commitTimeoutMillis = commitTimeoutMillis;
+        this.durability = durability;
+        this.writer = new Thread(this::writeLoop, "message-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return a write-behind configured by the messages.writeBehind.* system properties, or null if
+     * messages.writeBehind is not set to true
+     */
+    public static MessageWriteBehind fromSystemProperties(MessageDAO messageDAO)
+    {
+        if(!Boolean.getBoolean("messages.writeBehind"))
+        {
+            return null;
+        }
+        return new MessageWriteBehind(messageDAO,
+                Integer.getInteger("messages.writeBehind.queueSize", 10000),
+                Integer.getInteger("messages.writeBehind.batchSize", 500),
+                Long.getLong("messages.writeBehind.offerTimeoutMillis", 100),
+                Long.getLong("messages.writeBehind.commitTimeoutMillis", 5000),
+                Durability.valueOf(System.getProperty("messages.writeBehind.durability", Durability.COMMIT.name())
+                        .trim().toUpperCase()));
+    }
+
+    /**
+     * Queue a validated message to be written
+     *
+     * @param message, the message to insert. It does not contain a message_id
+     * @return the queued message, or null if no message_id could be reserved for it
+     * @throws RejectedExecutionException if the queue stayed full for the offer timeout, or the writer is stopped
+     */
+    public PendingMessage submit(Message message)
+    {
+        return submit(message, reserved -> {});
+    }
+
+    /**
+     * Queue a validated message to be written, as submit(message), first telling the caller which message_id it was
+     * given. The message cannot be committed before beforeQueued returns.
+     *
+     * @param message, the message to insert. It does not contain a message_id
+     * @param beforeQueued, given the message with its reserved message_id just before it is queued
+     * @return the queued message, or null if no message_id could be reserved for it
+     * @throws RejectedExecutionException if the queue stayed full for the offer timeout, or the writer is stopped
+     */
+    public PendingMessage submit(Message message, Consumer<Message> beforeQueued)
+    {
+        reserveSlot();
+        Integer id = messageDAO.reserveMessageId();
+        if(id == null)
+        {
+            size.decrementAndGet();
+            return null;
+        }
+        PendingMessage pending = new PendingMessage(new Message(id, message.getPosted_by(),
+                message.getMessage_text(), message.getTime_posted_epoch()));
+        try
+        {
+            beforeQueued.accept(pending.message);
+        }
+        catch(RuntimeException e)
+        {
+            size.decrementAndGet();
+            throw e;
+        }
+        queue.offer(pending);
+        LockSupport.unpark(writer);
+        return pending;
+    }
+
+    /**
+     * Wait for a submitted message's batch to commit
+     *
+     * @param pending, a message returned by submit
+     * @return true if the message was committed, false if it could not be written
+     * @throws RejectedExecutionException if the batch has not committed within the commit timeout
+     */
+    public boolean awaitCommit(PendingMessage pending)
+    {
+        try
+        {
+            return pending.committed.get(commitTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch(TimeoutException e)
+        {
+            throw new RejectedExecutionException("The message was not committed within " + commitTimeoutMillis + "ms");
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a message to be committed", e);
+        }
+        catch(ExecutionException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @return when submitted messages are acknowledged
+     */
+    public Durability getDurability()
+    {
+        return durability;
+    }
+
+    /**
+     * @return the number of messages waiting to be written, including the batch being written
+     */
+    public int getQueueSize()
+    {
+        return size.get();
+    }
+
+    /**
+     * Stop accepting messages, and wait for the writer to write every message already queued
+     *
+     * @param timeoutMillis, how long to wait for the writer
+     */
+    public void close(long timeoutMillis)
+    {
+        running = false;
+        LockSupport.unpark(writer);
+        try
+        {
+            writer.join(timeoutMillis);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if(!writer.isAlive())
+        {
+            // a submit that reserved its slot just before running was cleared may have queued after the writer's last poll
+            List<PendingMessage> batch = new ArrayList<>();
+            PendingMessage pending;
+            while((pending = queue.poll()) != null)
+            {
+                batch.add(pending);
+            }
+            if(!batch.isEmpty())
+            {
+                write(batch);
+                size.addAndGet(-batch.size());
+            }
+        }
+    }
+
+    private void reserveSlot()
+    {
+        long deadline = System.nanoTime() + offerTimeoutNanos;
+        while(true)
+        {
+            if(!running)
+            {
+                throw new RejectedExecutionException("The message writer has been stopped");
+            }
+            int current = size.get();
+            if(current < capacity)
+            {
+                if(size.compareAndSet(current, current + 1))
+                {
+                    return;
+                }
+                continue;
+            }
+            if(System.nanoTime() - deadline >= 0)
+            {
+                throw new RejectedExecutionException("The message write queue is full (" + capacity + " messages)");
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+    private void writeLoop()
+    {
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while(running || !queue.isEmpty())
+        {
+            PendingMessage pending;
+            while(batch.size() < batchSize && (pending = queue.poll()) != null)
+            {
+                batch.add(pending);
+            }
+            if(batch.isEmpty())
+            {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+                continue;
+            }
+            write(batch);
+            size.addAndGet(-batch.size());
+            batch.clear();
+        }
+    }
+
+    private void write(List<PendingMessage> batch)
+    {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for(PendingMessage pending : batch)
+        {
+            messages.add(pending.message);
+        }
+        if(messageDAO.insertMessagesWithIds(messages))
+        {
+            for(PendingMessage pending : batch)
+            {
+                pending.committed.complete(true);
+            }
+            return;
+        }
+        for(PendingMessage pending : batch)
+        {
+            pending.committed.complete(batch.size() > 1
+                    && messageDAO.insertMessagesWithIds(Collections.singletonList(pending.message)));
+        }
+    }
+
+    /**
+     * A message waiting to be written
+     */
+    public static class PendingMessage
+    {
+        private final Message message;
+        private final CompletableFuture<Boolean> committed = new CompletableFuture<>();
+
+        PendingMessage(Message message)
+        {
+            this.message = message;
+        }
+
+        /**
+         * @return the message as it will be inserted, including its reserved message_id
+         */
+        public Message getMessage()
+        {
+            return message;
+        }
+
+        /**
+         * @return completes with true once the message has been committed, or false if it could not be written
+         */
+        public CompletableFuture<Boolean> getCommitted()
+        {
+            return committed;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package Service;
+
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * The RecentMessageWindow holds every message posted within the last windowSeconds, grouped into buckets of
+ * bucketSeconds by time_posted_epoch, so that time range queries over recent messages are answered from memory.
+ *
+ * The window is loaded from the database on first use, and kept up to date by the MessageService that owns it as
+ * messages are inserted, updated and deleted. Buckets that fall out of the window are dropped whole. The window only
+ * answers a query if it holds every message the query could match, that is, if the start of the range is no earlier
+ * than the oldest time the window is complete from; other queries must go to the database.
+ *
+ * Changes that arrive while the window is being loaded wait for the load and are applied afterwards; applying a
+ * change twice does no harm.
+ */
+public class RecentMessageWindow
+{
+    private static final Comparator<Message> TIME_ORDER = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id);
+
+    private final long windowSeconds;
+    private final long bucketSeconds;
+    private final LongSupplier clock;
+    /**
+     * Messages by message_id, in buckets keyed by time_posted_epoch / bucketSeconds
+     */
+    private final ConcurrentSkipListMap<Long, Map<Integer, Message>> buckets = new ConcurrentSkipListMap<>();
+    /**
+     * Loads take the write lock; changes take the read lock, since they may be applied concurrently with each other
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean started = false;
+    private volatile boolean loaded = false;
+    /**
+     * The time_posted_epoch from which the window holds every message. Only ever moves forward
+     */
+    private volatile long completeFrom = Long.MAX_VALUE;
+
+    /**
+     * @param windowSeconds, how far back from now messages are held
+     * @param bucketSeconds, the width of each bucket, which is the granularity at which old messages are dropped
+     * @param clock, supplies the current time in epoch seconds
+     */
+    public RecentMessageWindow(long windowSeconds, long bucketSeconds, LongSupplier clock)
+    {
+        this.windowSeconds = windowSeconds;
+        this.bucketSeconds = Math.max(1, bucketSeconds);
+        this.clock = clock;
+    }
+
+    /**
+     * Load the window if it has not been loaded yet. Only one caller loads it; the others wait
+     *
+     * @param source, passed the earliest time_posted_epoch wanted, streams every message posted since then to the
+     *                consumer, returning false if it could not read them all
+     * @return false if the window could not be loaded, in which case it stays empty and the next call tries again
+     */
+    public boolean ensureLoaded(BiPredicate<Long, Consumer<Message>> source)
+    {
+        if(loaded)
+        {
+            return true;
+        }
+        lock.writeLock().lock();
+        try
+        {
+            if(loaded)
+            {
+                return true;
+            }
+            started = true;
+            long from = bucketStart(clock.getAsLong() - windowSeconds);
+            if(!source.test(from, this::add))
+            {
+                buckets.clear();
+                started = false;
+                return false;
+            }
+            completeFrom = from;
+            loaded = true;
+            return true;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param message, a newly inserted message
+     */
+    public void messageInserted(Message message)
+    {
+        apply(() -> {
+            evictExpired();
+            add(message);
+        });
+    }
+
+    /**
+     * @param message, the message as it is now stored
+     */
+    public void messageUpdated(Message message)
+    {
+        apply(() -> {
+            Map<Integer, Message> bucket = buckets.get(bucketOf(message.getTime_posted_epoch()));
+            if(bucket != null)
+            {
+                bucket.replace(message.getMessage_id(), message);
+            }
+        });
+    }
+
+    /**
+     * @param message, the message that was deleted
+     */
+    public void messageDeleted(Message message)
+    {
+        apply(() -> {
+            Map<Integer, Message> bucket = buckets.get(bucketOf(message.getTime_posted_epoch()));
+            if(bucket != null)
+            {
+                bucket.remove(message.getMessage_id());
+            }
+        });
+    }
+
+    /**
+     * Find the messages posted within a time range, if the window holds all of them
+     *
+     * @param posted_by, the account whose messages are wanted, or null for every account
+     * @param since, the earliest time_posted_epoch to include
+     * @param until, the time_posted_epoch to stop before
+     * @param limit, the most messages to return
+     * @return the messages ordered by time_posted_epoch and then message_id, or null if the range starts before the
+     * window is complete and must be read from the database
+     */
+    public List<Message> getMessagesBetween(Integer posted_by, long since, long until, int limit)
+    {
+        if(!loaded)
+        {
+            return null;
+        }
+        evictExpired();
+        if(since < completeFrom)
+        {
+            return null;
+        }
+        List<Message> messages = new ArrayList<>();
+        if(until <= since)
+        {
+            return messages;
+        }
+        for(Map<Integer, Message> bucket : buckets.subMap(bucketOf(since), true, bucketOf(until - 1), true).values())
+        {
+            for(Message message : bucket.values())
+            {
+                long time = message.getTime_posted_epoch();
+                if(time >= since && time < until && (posted_by == null || message.getPosted_by() == posted_by))
+                {
+                    messages.add(message);
+                }
+            }
+        }
+        messages.sort(TIME_ORDER);
+        return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+    }
+
+    /**
+     * @return the time_posted_epoch from which every message is held, or Long.MAX_VALUE before the window is loaded
+     */
+    public long getCompleteFrom()
+    {
+        return completeFrom;
+    }
+
+    /**
+     * @return the number of messages held
+     */
+    public int size()
+    {
+        int size = 0;
+        for(Map<Integer, Message> bucket : buckets.values())
+        {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    private void apply(Runnable change)
+    {
+        if(!started)
+        {
+            return;
+        }
+        lock.readLock().lock();
+        try
+        {
+            if(loaded)
+            {
+                change.run();
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hold a message if it falls inside the window. Older messages are left to the database
+     */
+    private void add(Message message)
+    {
+        long bucket = bucketOf(message.getTime_posted_epoch());
+        if(bucket < bucketOf(clock.getAsLong() - windowSeconds))
+        {
+            return;
+        }
+        buckets.computeIfAbsent(bucket, key -> new ConcurrentHashMap<>()).put(message.getMessage_id(), message);
+    }
+
+    /**
+     * Drop the buckets that have fallen out of the window, and move completeFrom up to the first bucket kept
+     */
+    private synchronized void evictExpired()
+    {
+        long firstKept = bucketOf(clock.getAsLong() - windowSeconds);
+        if(firstKept * bucketSeconds > completeFrom)
+        {
+            buckets.headMap(firstKept).clear();
+            completeFrom = firstKept * bucketSeconds;
+        }
+    }
+
+    private long bucketOf(long time)
+    {
+        return Math.floorDiv(time, bucketSeconds);
+    }
+
+    private long bucketStart(long time)
+    {
+        return bucketOf(time) * bucketSeconds;
+    }
+}
@@ -0,0 +1,173 @@
+package Service;
+
+import Model.Message;
+import Util.BoundedCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * The TimelineCache holds each account's messages, oldest first, so that repeated profile views are served from
+ * memory. Timelines are immutable lists; a change to a timeline replaces the whole list, so readers never need to
+ * copy or lock.
+ *
+ * Only timelines no longer than maxLength are cached. New messages are inserted into a cached timeline in
+ * time_posted_epoch order, and updated or deleted messages are replaced or removed in place.
+ */
+public class TimelineCache
+{
+    /**
+     * The order messages are returned by MessageDAO.getMessagesByUser: by time posted, then by message_id
+     */
+    static final Comparator<Message> TIMELINE_ORDER = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id);
+
+    /**
+     * Rough size of a Message object plus its String and backing array, excluding the characters themselves
+     */
+    private static final long MESSAGE_OVERHEAD_BYTES = 96;
+    /**
+     * Rough size of a cached list and its cache entry, excluding the references to the messages
+     */
+    private static final long TIMELINE_OVERHEAD_BYTES = 96;
+
+    private final int maxLength;
+    private final BoundedCache<Integer, List<Message>> timelines;
+
+    /**
+     * @param maxAccounts, the maximum number of timelines held at once
+     * @param maxLength, the longest timeline that will be cached
+     * @param ttlMillis, how long a timeline stays valid after it is loaded or changed, or 0 for no time limit
+     */
+    public TimelineCache(int maxAccounts, int maxLength, long ttlMillis)
+    {
+        this.maxLength = maxLength;
+        this.timelines = new BoundedCache<>(maxAccounts, ttlMillis);
+    }
+
+    /**
+     * Return an account's timeline, loading it on a miss. A timeline longer than maxLength is returned but not
+     * cached.
+     *
+     * @param account_id, the account whose timeline is wanted
+     * @param loader, loads the timeline from the database in timeline order
+     * @return the account's messages, oldest first. The list must not be modified
+     */
+    public List<Message> getTimeline(int account_id, Function<Integer, List<Message>> loader)
+    {
+        AtomicReference<List<Message>> tooLong = new AtomicReference<>();
+        List<Message> timeline = timelines.getOrLoad(account_id, id -> {
+            List<Message> loaded = loader.apply(id);
+            if(loaded.size() > maxLength)
+            {
+                tooLong.set(loaded);
+                return null;
+            }
+            return Collections.unmodifiableList(loaded);
+        });
+        return timeline != null ? timeline : tooLong.get();
+    }
+
+    /**
+     * Add a newly inserted message to its author's timeline, if that timeline is cached
+     *
+     * @param message, the inserted message, including its message_id
+     */
+    public synchronized void messageInserted(Message message)
+    {
+        List<Message> timeline = timelines.peek(message.getPosted_by());
+        if(timeline == null || timeline.size() >= maxLength)
+        {
+            timelines.invalidate(message.getPosted_by());
+            return;
+        }
+        List<Message> updated = new ArrayList<>(timeline.size() + 1);
+        updated.addAll(timeline);
+        int position = Collections.binarySearch(updated, message, TIMELINE_ORDER);
+        updated.add(position < 0 ? -position - 1 : position, message);
+        timelines.put(message.getPosted_by(), Collections.unmodifiableList(updated));
+    }
+
+    /**
+     * Replace an updated message in its author's timeline, if that timeline is cached
+     *
+     * @param message, the message as it is after the update
+     */
+    public synchronized void messageUpdated(Message message)
+    {
+        List<Message> timeline = timelines.peek(message.getPosted_by());
+        if(timeline == null)
+        {
+            timelines.invalidate(message.getPosted_by());
+            return;
+        }
+        List<Message> updated = new ArrayList<>(timeline);
+        updated.replaceAll(existing -> existing.getMessage_id() == message.getMessage_id() ? message : existing);
+        timelines.put(message.getPosted_by(), Collections.unmodifiableList(updated));
+    }
+
+    /**
+     * Remove a deleted message from its author's timeline, if that timeline is cached
+     *
+     * @param message, the message that was deleted
+     */
+    public synchronized void messageDeleted(Message message)
+    {
+        List<Message> timeline = timelines.peek(message.getPosted_by());
+        if(timeline == null)
+        {
+            timelines.invalidate(message.getPosted_by());
+            return;
+        }
+        List<Message> updated = new ArrayList<>(timeline);
+        updated.removeIf(existing -> existing.getMessage_id() == message.getMessage_id());
+        timelines.put(message.getPosted_by(), Collections.unmodifiableList(updated));
+    }
+
+    /**
+     * @return the fraction of timeline lookups that were served from memory
+     */
+    public double getHitRatio()
+    {
+        return timelines.getHitRatio();
+    }
+
+    /**
+     * @return the number of timelines currently cached
+     */
+    public int size()
+    {
+        return timelines.size();
+    }
+
+    /**
+     * @return the underlying cache, for reporting its statistics
+     */
+    public BoundedCache<Integer, List<Message>> getCache()
+    {
+        return timelines;
+    }
+
+    /**
+     * @return an estimate of the heap used by the cached timelines, in bytes. Messages shared with other caches are
+     * counted here as well
+     */
+    public long estimateMemoryBytes()
+    {
+        long bytes = 0;
+        for(List<Message> timeline : timelines.values())
+        {
+            bytes += TIMELINE_OVERHEAD_BYTES + 8L * timeline.size();
+            for(Message message : timeline)
+            {
+                String text = message.getMessage_text();
+                bytes += MESSAGE_OVERHEAD_BYTES + (text != null ? 2L * text.length() : 0);
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,159 @@
+package Service;
+
+import DAO.AccountDAO;
+import Util.BloomFilter;
+import Util.IdBitmap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The UsernameIndex maps every username to its account_id in memory, so that registration and login can tell whether
+ * a username is taken without asking the database. It is warmed from the account table when it is created and kept
+ * up to date as accounts are created through the AccountService that owns it.
+ *
+ * A Bloom filter sits in front of the map: most lookups for a username that is not taken are answered from a few
+ * bits, without hashing into the map at all. The filter is rebuilt twice as large whenever the number of usernames
+ * outgrows it, so its false positive rate stays near the configured one.
+ *
+ * Every account_id is also kept in a bitmap, so that whether an account exists can be answered without the database
+ * too. Accounts are never deleted, so neither structure ever needs an entry removed.
+ *
+ * If the index could not be warmed, isReady() is false and callers must fall back to the database.
+ */
+public class UsernameIndex
+{
+    /**
+     * Rough size of a map entry with its Integer value, plus a String and its backing array, excluding the characters,
+     * which take a byte each for the usual Latin-1 usernames
+     */
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    private final double falsePositiveProbability;
+    private final Map<String, Integer> accountIds = new ConcurrentHashMap<>();
+    private final IdBitmap accountIdBitmap = new IdBitmap();
+    private volatile BloomFilter filter;
+    private long filterCapacity;
+    /**
+     * The estimated heap used by the map, kept up to date as usernames are added so reporting it is cheap
+     */
+    private volatile long mapBytes = 0;
+    private final boolean ready;
+
+    /**
+     * @param accountDAO, used to read every existing username
+     * @param expectedAccounts, the number of usernames the Bloom filter is first sized for
+     * @param falsePositiveProbability, the Bloom filter's false positive probability at its capacity
+     */
+    public UsernameIndex(AccountDAO accountDAO, long expectedAccounts, double falsePositiveProbability)
+    {
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.filterCapacity = Math.max(1, expectedAccounts);
+        this.filter = new BloomFilter(filterCapacity, falsePositiveProbability);
+        this.ready = accountDAO.streamUsernames(this::add);
+    }
+
+    /**
+     * @return false if the index could not be warmed, in which case it must not be used to reject a username
+     */
+    public boolean isReady()
+    {
+        return ready;
+    }
+
+    /**
+     * @param username, the username to look for
+     * @return true if an account has the username
+     */
+    public boolean contains(String username)
+    {
+        return filter.mightContain(username) && accountIds.containsKey(username);
+    }
+
+    /**
+     * @param username, the username to look for
+     * @return the account_id of the account with the username, or null if there is none
+     */
+    public Integer getAccountId(String username)
+    {
+        return filter.mightContain(username) ? accountIds.get(username) : null;
+    }
+
+    /**
+     * @param account_id, the account_id to look for
+     * @return true if an account has the account_id
+     */
+    public boolean containsAccountId(int account_id)
+    {
+        return accountIdBitmap.contains(account_id);
+    }
+
+    /**
+     * Record a newly created account. Adds are serialized, which keeps growing the filter simple; lookups never wait
+     *
+     * @param username, the account's username
+     * @param account_id, the account's id
+     */
+    public synchronized void add(String username, Integer account_id)
+    {
+        // the filter is updated before the map, so a reader that finds the username in the map also passes the filter
+        filter.add(username);
+        accountIdBitmap.add(account_id);
+        if(accountIds.put(username, account_id) == null)
+        {
+            mapBytes += ENTRY_OVERHEAD_BYTES + username.length();
+        }
+        if(accountIds.size() > filterCapacity)
+        {
+            growFilter();
+        }
+    }
+
+    /**
+     * @return the number of usernames indexed
+     */
+    public int size()
+    {
+        return accountIds.size();
+    }
+
+    /**
+     * @return the heap used by the Bloom filter, in bytes
+     */
+    public long getFilterMemoryBytes()
+    {
+        return filter.getMemoryBytes();
+    }
+
+    /**
+     * @return the heap used by the account_id bitmap, in bytes
+     */
+    public long getAccountIdBitmapMemoryBytes()
+    {
+        return accountIdBitmap.getMemoryBytes();
+    }
+
+    /**
+     * @return an estimate of the heap used by the whole index, including the Bloom filter and the account_id bitmap,
+     * in bytes
+     */
+    public long estimateMemoryBytes()
+    {
+        return filter.getMemoryBytes() + accountIdBitmap.getMemoryBytes() + mapBytes;
+    }
+
+    /**
+     * Replace the filter with one twice the size, holding every username in the map
+     */
+    private void growFilter()
+    {
+        long capacity = filterCapacity * 2;
+        BloomFilter grown = new BloomFilter(capacity, falsePositiveProbability);
+        for(String username : accountIds.keySet())
+        {
+            grown.add(username);
+        }
+        filter = grown;
+        filterCapacity = capacity;
+    }
+}
@@ -0,0 +1,125 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of strings: a set that can answer "definitely not present" or "possibly present" in a few memory
+ * reads, using a fixed number of bits however long the strings are.
+ *
+ * The filter is sized for an expected number of strings and a false positive probability. Adding more strings than
+ * expected still works, but the false positive rate climbs. Strings cannot be removed.
+ *
+ * Bits are set with compare-and-set, so adds and lookups may run concurrently without locking. A lookup that runs
+ * alongside the add of the same string may miss it.
+ */
+public class BloomFilter
+{
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions, the number of strings the filter is sized for
+     * @param falsePositiveProbability, the chance that a string that was never added is reported as possibly present
+     *                                  once expectedInsertions strings have been added, eg 0.01
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveProbability)
+    {
+        if(falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+        {
+            throw new IllegalArgumentException("False positive probability must be between 0 and 1");
+        }
+        long n = Math.max(1, expectedInsertions);
+        long bits = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.max(64, (bits + 63) / 64 * 64);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+        this.words = new AtomicLongArray((int) (bitCount / 64));
+    }
+
+    /**
+     * @param value, the string to add
+     */
+    public void add(String value)
+    {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for(int i = 1; i <= hashCount; i++)
+        {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while((current & mask) == 0 && !words.compareAndSet(word, current, current | mask))
+            {
+                current = words.get(word);
+            }
+        }
+    }
+
+    /**
+     * @param value, the string to look for
+     * @return false if the string has definitely not been added, true if it may have been
+     */
+    public boolean mightContain(String value)
+    {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for(int i = 1; i <= hashCount; i++)
+        {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bits in the filter
+     */
+    public long getBitCount()
+    {
+        return bitCount;
+    }
+
+    /**
+     * @return the number of bits set for each string
+     */
+    public int getHashCount()
+    {
+        return hashCount;
+    }
+
+    /**
+     * @return the heap used by the filter's bits, in bytes
+     */
+    public long getMemoryBytes()
+    {
+        return bitCount / 8;
+    }
+
+    /**
+     * 64 bit FNV-1a over the UTF-8 bytes of the string, finished with the MurmurHash3 mixer so that both halves are
+     * well distributed. The halves are combined as h1 + i * h2 to give each of the hashCount bit positions
+     * (Kirsch and Mitzenmacher), so the string is only hashed once.
+     */
+    private static long hash(String value)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : value.getBytes(StandardCharsets.UTF_8))
+        {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,258 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A thread safe, size and time bounded cache. When the cache is full the least recently used entry is evicted, and an
+ * entry older than the time to live is treated as missing. Hits, misses and evictions are counted.
+ *
+ * Values loaded through getOrLoad() are only stored if their key was not put or invalidated while they were being
+ * loaded, so a slow read can never put back a value that a concurrent write has just invalidated. Writes to other keys
+ * do not cancel a load.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class BoundedCache<K, V>
+{
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    /**
+     * The keys being loaded by getOrLoad(), each with the number of times the key has been written since its loads began
+     */
+    private final HashMap<K, Load> loads = new HashMap<>();
+
+    /**
+     * @param maxSize, the maximum number of entries held at once
+     * @param ttlMillis, how long an entry stays valid after it is stored, or 0 for no time limit
+     */
+    public BoundedCache(int maxSize, long ttlMillis)
+    {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    /**
+     * @param key, the key to look up
+     * @return the cached value, or null if it is missing or has expired
+     */
+    public V get(K key)
+    {
+        synchronized(this)
+        {
+            Entry<V> entry = entries.get(key);
+            if(entry != null)
+            {
+                if(ttlNanos <= 0 || System.nanoTime() - entry.storedAt < ttlNanos)
+                {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                entries.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Look up a value without counting a hit or miss
+     *
+     * @param key, the key to look up
+     * @return the cached value, or null if it is missing or has expired
+     */
+    public synchronized V peek(K key)
+    {
+        Entry<V> entry = entries.get(key);
+        if(entry == null || (ttlNanos > 0 && System.nanoTime() - entry.storedAt >= ttlNanos))
+        {
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Return the cached value for a key, loading and storing it on a miss. The loader runs without holding the cache
+     * lock. A null result from the loader is returned but not cached.
+     *
+     * @param key, the key to look up
+     * @param loader, computes the value when it is not cached
+     * @return the cached or newly loaded value
+     */
+    public V getOrLoad(K key, Function<K, V> loader)
+    {
+        V value = get(key);
+        if(value != null)
+        {
+            return value;
+        }
+        Load load;
+        long writesBeforeLoad;
+        synchronized(this)
+        {
+            load = loads.computeIfAbsent(key, k -> new Load());
+            load.loaders++;
+            writesBeforeLoad = load.writes;
+        }
+        try
+        {
+            value = loader.apply(key);
+        }
+        finally
+        {
+            synchronized(this)
+            {
+                if(value != null && load.writes == writesBeforeLoad)
+                {
+                    store(key, value);
+                }
+                if(--load.loaders == 0)
+                {
+                    loads.remove(key);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Store a value, replacing any value already cached for the key
+     *
+     * @param key, the key to store the value under
+     * @param value, the value to store
+     */
+    public synchronized void put(K key, V value)
+    {
+        written(key);
+        store(key, value);
+    }
+
+    /**
+     * Remove the value cached for a key, if there is one
+     *
+     * @param key, the key to remove
+     */
+    public synchronized void invalidate(K key)
+    {
+        written(key);
+        entries.remove(key);
+    }
+
+    /**
+     * Remove every value from the cache
+     */
+    public synchronized void clear()
+    {
+        for(Load load : loads.values())
+        {
+            load.writes++;
+        }
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries currently cached, including any that have expired but not yet been removed
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return a snapshot of every cached value, including any that have expired but not yet been removed
+     */
+    public synchronized List<V> values()
+    {
+        List<V> values = new ArrayList<>(entries.size());
+        for(Entry<V> entry : entries.values())
+        {
+            values.add(entry.value);
+        }
+        return values;
+    }
+
+    /**
+     * @return the number of lookups that found a valid value
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found no valid value
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries removed because the cache was full or they had expired
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return the fraction of lookups that were hits, or 0 if there have been no lookups
+     */
+    public double getHitRatio()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private void written(K key)
+    {
+        Load load = loads.get(key);
+        if(load != null)
+        {
+            load.writes++;
+        }
+    }
+
+    private void store(K key, V value)
+    {
+        entries.put(key, new Entry<>(value, System.nanoTime()));
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while(entries.size() > maxSize && iterator.hasNext())
+        {
+            iterator.next();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static class Load
+    {
+        int loaders;
+        long writes;
+    }
+
+    private static class Entry<V>
+    {
+        final V value;
+        final long storedAt;
+
+        Entry(V value, long storedAt)
+        {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The BoundedExecutor class builds the bounded executors that slow work is handed to, such as blocking database calls
+ * or password hashing, so that request threads are not held while it runs.
+ *
+ * An executor has a fixed number of threads and a fixed length queue. Once both are full, further tasks are rejected
+ * with a RejectedExecutionException rather than queued without limit, so a slow database turns into fast failures
+ * instead of unbounded memory and latency.
+ */
+public class BoundedExecutor
+{
+    private BoundedExecutor()
+    {
+    }
+
+    /**
+     * @param name, the prefix of the executor's thread names
+     * @param threads, the number of threads, which should not exceed the number of pooled connections
+     * @param queueSize, the number of tasks that may wait for a thread
+     * @return a new executor, which must be shut down when it is no longer needed
+     */
+    public static ThreadPoolExecutor create(String name, int threads, int queueSize)
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemonThreads(name), new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Create an executor sized for the current connection provider. The thread count defaults to the pool's maximum
+     * size, so a task never waits on the pool for a connection, and can be changed with the db.executor.threads system
+     * property. The queue size defaults to 1000 and can be changed with db.executor.queueSize.
+     *
+     * @param name, the prefix of the executor's thread names
+     * @return a new executor, which must be shut down when it is no longer needed
+     */
+    public static ThreadPoolExecutor createForConnectionPool(String name)
+    {
+        ConnectionProvider provider = ConnectionUtil.getConnectionProvider();
+        int defaultThreads = provider instanceof PooledConnectionProvider
+                ? ((PooledConnectionProvider) provider).getMaxSize()
+                : Math.max(10, Runtime.getRuntime().availableProcessors() * 2);
+        return create(name, Integer.getInteger("db.executor.threads", defaultThreads),
+                Integer.getInteger("db.executor.queueSize", 1000));
+    }
+
+    private static ThreadFactory daemonThreads(String name)
+    {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A ConnectionProvider hands out database connections to the DAO layer. Callers must close every connection they
+ * receive; depending on the implementation, closing may return the connection to a pool rather than closing the
+ * underlying physical connection.
+ */
+public interface ConnectionProvider
+{
+    /**
+     * Check out a connection. The caller owns the connection until it calls close() on it.
+     *
+     * @return an open connection
+     * @throws SQLException if no connection could be obtained
+     */
+    Connection getConnection() throws SQLException;
+
+    /**
+     * Release every resource held by this provider. Connections that are still checked out are closed as they are
+     * returned.
+     */
+    void shutdown();
+}
@@ -2,69 +2,132 @@ package Util;
 
 import org.h2.tools.RunScript;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 /**
- * The ConnectionUtil class will be utilized to create an active connection to our database. This class utilizes the singleton design pattern.
- * We will be utilizing an in-memory called h2database for the sql demos.
+ * The ConnectionUtil class will be utilized to hand out connections to our database. Connections come from a
+ * pluggable ConnectionProvider, which by default is a bounded pool of connections to an h2database.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Every connection returned by getConnection() must be closed by the caller, which returns it to the pool.
+ *
+ * The pool can be tuned with the following system properties:
+ * db.pool.minSize, db.pool.maxSize, db.pool.acquireTimeoutMillis, db.pool.leakThresholdMillis and
+ * db.pool.statementCacheSize
+ *
+ * Leak detection is off by default, since it captures a stack trace on every checkout. To find a leak, set
+ * db.pool.leakThresholdMillis to how long a connection may be held, eg -Ddb.pool.leakThresholdMillis=30000, and each
+ * connection held for longer is reported once along with the code that checked it out.
  */
 public class ConnectionUtil {
 
     /**
      * url will represent our connection string. Since this is an in-memory db, we will represent a file location to store the data
      */
-    private static String url = "jdbc:h2:./h2/db";
+    private static String url = System.getProperty("db.url", "jdbc:h2:./h2/db");
     /**
      * Default username for connecting to h2
      */
-    private static String username = "sa";
+    private static String username = System.getProperty("db.username", "sa");
     /**
      * Default password for connecting to h2
      */
-    private static String password = "sa";
+    private static String password = System.getProperty("db.password", "sa");
     /**
-     * a static object which represents the connection to h2. Because it is static, any DAO interacting
-     * with this connection object is referring to the same object.
+     * The sql script used to create the database tables
      */
-    private static Connection connection = null;
+    private static String schemaScript = System.getProperty("db.schemaScript", "src/main/resources/SocialMedia.sql");
     /**
-     * @return an active connection to the database and set up the database tables if this is the first time the
-     * Connection has been established
+     * The directory of versioned migration scripts applied on top of the schema script
      */
-    public static Connection getConnection(){
-        if(connection == null){
-            try {
-                connection = DriverManager.getConnection(url, username, password);
+    private static String migrationsDirectory = System.getProperty("db.migrationsDirectory", "src/main/resources/db/migration");
+    /**
+     * Whether the tables are recreated from the schema script when the first connection is requested. When false, an
+     * existing database keeps its data and only has its pending migrations applied
+     */
+    private static boolean resetOnStart = Boolean.parseBoolean(System.getProperty("db.resetOnStart", "true"));
+    /**
+     * a static object which hands out connections to h2. Because it is static, every DAO draws its connections from
+     * the same provider.
+     */
+    private static ConnectionProvider provider = null;
+
+    /**
+     * @return an active connection to the database and set up the database tables if this is the first time a
+     * connection has been requested. The connection must be closed once the caller is done with it.
+     * @throws SQLException if a connection could not be obtained from the provider
+     */
+    public static Connection getConnection() throws SQLException {
+        return getConnectionProvider().getConnection();
+    }
+
+    /**
+     * @return the provider that connections are drawn from, creating the default pool if none has been set
+     */
+    public static synchronized ConnectionProvider getConnectionProvider(){
+        if(provider == null){
+            int processors = Runtime.getRuntime().availableProcessors();
+            provider = new PooledConnectionProvider(url, username, password,
+                    Integer.getInteger("db.pool.minSize", 2),
+                    Integer.getInteger("db.pool.maxSize", Math.max(10, processors * 2)),
+                    Long.getLong("db.pool.acquireTimeoutMillis", 5000),
+                    Long.getLong("db.pool.leakThresholdMillis", 0),
+                    Integer.getInteger("db.pool.statementCacheSize", 32));
+            if(resetOnStart){
                 resetTestDatabase();
-            } catch (SQLException e) {
-                e.printStackTrace();
+            } else {
+                migrateDatabase();
             }
         }
+        return provider;
+    }
 
-        return connection;
+    /**
+     * Replace the provider that connections are drawn from. The previous provider, if any, is shut down.
+     *
+     * @param connectionProvider, the provider to use from now on
+     */
+    public static synchronized void setConnectionProvider(ConnectionProvider connectionProvider){
+        if(provider != null && provider != connectionProvider){
+            provider.shutdown();
+        }
+        provider = connectionProvider;
     }
+
     /**
      * For the purpose of testing, we will need to drop and recreate our database tables to keep it consistent across
-     * all tests. The method will read the sql file in resources. This will be performed before every test.
+     * all tests. The method will read the sql file in resources and then apply every migration on top of it. This
+     * will be performed before every test.
      */
     public static void resetTestDatabase(){
-//        if there is no connection, use the getConnection method to set it up
-        if(connection == null){
-            getConnection();
-        }else {
-//            otherwise, recreate the tables without setting up a new connection
+        ConnectionProvider connectionProvider = getConnectionProvider();
+        try (Connection connection = connectionProvider.getConnection();
+             FileReader sqlReader = new FileReader(schemaScript)) {
+            RunScript.execute(connection, sqlReader);
+            new SchemaMigrator(migrationsDirectory).migrate(connection);
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Bring an existing database up to date by applying the migrations it has not had yet, keeping its data. A
+     * database without a schema_version table has never been set up, so it is reset instead.
+     */
+    public static void migrateDatabase(){
+        SchemaMigrator migrator = new SchemaMigrator(migrationsDirectory);
+        try (Connection connection = getConnectionProvider().getConnection()) {
             try {
-                FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-                RunScript.execute(connection, sqlReader);
-            } catch (SQLException | FileNotFoundException e) {
-                e.printStackTrace();
+                migrator.getCurrentVersion(connection);
+            } catch (SQLException e) {
+                resetTestDatabase();
+                return;
             }
+            migrator.migrate(connection);
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
         }
     }
 
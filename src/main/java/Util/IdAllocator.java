@@ -0,0 +1,139 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The IdAllocator hands out primary keys from memory, reserving them from an h2 sequence a block at a time (the
+ * pooled form of hi/lo). The sequence's increment is the block size: each call to next value for the sequence
+ * reserves every id from the value returned up to, but not including, the value plus the increment.
+ *
+ * Ids are handed out with a single atomic increment; only the thread that finds the block used up goes to the
+ * database for the next one. Ids are unique across every allocator and every plain insert that takes its key from
+ * the sequence, but an id that is handed out and never used is not reused, and allocators sharing a sequence hand out
+ * ids from their own blocks, so ids are only ascending per allocator.
+ */
+public class IdAllocator
+{
+    private final String sequenceName;
+    private final Object refillLock = new Object();
+    private volatile Block block = new Block(0, 0);
+    private long blockSize = 0;
+
+    /**
+     * @param sequenceName, the name of the sequence to reserve blocks from, eg message_id_seq
+     */
+    public IdAllocator(String sequenceName)
+    {
+        this.sequenceName = sequenceName;
+    }
+
+    /**
+     * @return an id that has not been handed out before
+     * @throws SQLException if the current block is used up and the next one could not be reserved
+     */
+    public int next() throws SQLException
+    {
+        while(true)
+        {
+            Block current = block;
+            long id = current.next.getAndIncrement();
+            if(id < current.limit)
+            {
+                return (int) id;
+            }
+            synchronized(refillLock)
+            {
+                if(block == current)
+                {
+                    block = reserveBlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param count, the number of ids wanted
+     * @return count ids that have not been handed out before, in ascending order
+     * @throws SQLException if a block could not be reserved
+     */
+    public int[] next(int count) throws SQLException
+    {
+        int[] ids = new int[count];
+        for(int i = 0; i < count; i++)
+        {
+            ids[i] = next();
+        }
+        return ids;
+    }
+
+    /**
+     * @return the number of ids reserved from the sequence at a time, or 0 if no block has been reserved yet
+     */
+    public long getBlockSize()
+    {
+        synchronized(refillLock)
+        {
+            return blockSize;
+        }
+    }
+
+    private Block reserveBlock() throws SQLException
+    {
+        try(Connection connection = ConnectionUtil.getConnection())
+        {
+            if(blockSize == 0)
+            {
+                blockSize = readIncrement(connection);
+            }
+            try(PreparedStatement preparedStatement = connection.prepareStatement(
+                        "select next value for " + sequenceName);
+                ResultSet rs = preparedStatement.executeQuery())
+            {
+                rs.next();
+                long start = rs.getLong(1);
+                return new Block(start, start + blockSize);
+            }
+        }
+    }
+
+    private long readIncrement(Connection connection) throws SQLException
+    {
+        try(PreparedStatement preparedStatement = connection.prepareStatement("select increment " +
+                "from information_schema.sequences where sequence_schema = schema() and sequence_name = ?"))
+        {
+            preparedStatement.setString(1, sequenceName.toUpperCase());
+            try(ResultSet rs = preparedStatement.executeQuery())
+            {
+                if(!rs.next())
+                {
+                    throw new SQLException("Sequence " + sequenceName + " does not exist");
+                }
+                long increment = rs.getLong(1);
+                if(increment < 1)
+                {
+                    throw new SQLException("Sequence " + sequenceName + " must count upwards to be used in blocks");
+                }
+                return increment;
+            }
+        }
+    }
+
+    /**
+     * A reserved range of ids. next runs past limit once the block is used up
+     */
+    private static class Block
+    {
+        final AtomicLong next;
+        final long limit;
+
+        Block(long start, long limit)
+        {
+            this.next = new AtomicLong(start);
+            this.limit = limit;
+        }
+    }
+}
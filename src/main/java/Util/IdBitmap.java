@@ -0,0 +1,91 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A set of non-negative ints held as a bitmap, for membership tests in a couple of memory reads.
+ *
+ * Like the containers of a roaring bitmap, the bitmap is split by the high 16 bits of each id into pages of 65536
+ * bits (8KB), and a page is only allocated once an id in its range is added, so the sparse ranges cost nothing and
+ * the dense ones a bit per id. Ids handed out from a sequence fill their pages densely.
+ *
+ * Pages are installed and bits set with compare-and-set, so adds and lookups may run concurrently without locking.
+ * Ids cannot be removed.
+ */
+public class IdBitmap
+{
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int WORDS_PER_PAGE = (1 << PAGE_SHIFT) / 64;
+
+    private final AtomicReferenceArray<AtomicLongArray> pages =
+            new AtomicReferenceArray<>(1 << (Integer.SIZE - 1 - PAGE_SHIFT));
+    private final AtomicInteger pageCount = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param id, the id to add
+     * @throws IllegalArgumentException if the id is negative
+     */
+    public void add(int id)
+    {
+        if(id < 0)
+        {
+            throw new IllegalArgumentException("Ids must not be negative: " + id);
+        }
+        AtomicLongArray page = pages.get(id >>> PAGE_SHIFT);
+        if(page == null)
+        {
+            AtomicLongArray allocated = new AtomicLongArray(WORDS_PER_PAGE);
+            if(pages.compareAndSet(id >>> PAGE_SHIFT, null, allocated))
+            {
+                pageCount.incrementAndGet();
+            }
+            page = pages.get(id >>> PAGE_SHIFT);
+        }
+        int word = (id & PAGE_MASK) >>> 6;
+        long mask = 1L << id;
+        long current = page.get(word);
+        while((current & mask) == 0)
+        {
+            if(page.compareAndSet(word, current, current | mask))
+            {
+                size.incrementAndGet();
+                return;
+            }
+            current = page.get(word);
+        }
+    }
+
+    /**
+     * @param id, the id to look for
+     * @return true if the id has been added
+     */
+    public boolean contains(int id)
+    {
+        if(id < 0)
+        {
+            return false;
+        }
+        AtomicLongArray page = pages.get(id >>> PAGE_SHIFT);
+        return page != null && (page.get((id & PAGE_MASK) >>> 6) & (1L << id)) != 0;
+    }
+
+    /**
+     * @return the number of ids added
+     */
+    public int size()
+    {
+        return size.get();
+    }
+
+    /**
+     * @return the heap used by the allocated pages and the page table, in bytes
+     */
+    public long getMemoryBytes()
+    {
+        return (long) pageCount.get() * WORDS_PER_PAGE * Long.BYTES + (long) pages.length() * 4;
+    }
+}
@@ -0,0 +1,94 @@
+package Util;
+
+import Model.Account;
+import Model.BatchItemResult;
+import Model.Message;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * The JsonCodec class holds the single ObjectMapper used by the application, along with readers and writers that
+ * have already been resolved for our model classes. ObjectMapper, ObjectReader and ObjectWriter are all thread safe
+ * once configured, so these instances are shared by every request instead of being rebuilt each time.
+ */
+public class JsonCodec
+{
+    /**
+     * The shared mapper. It must not be reconfigured after startup.
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+    public static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+    public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+    public static final ObjectReader MESSAGE_LIST_READER = MAPPER.readerFor(new TypeReference<List<Message>>(){});
+    public static final ObjectWriter MESSAGE_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<Message>>(){});
+    public static final ObjectWriter ID_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<Integer>>(){});
+    public static final ObjectWriter BATCH_RESULT_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<BatchItemResult>>(){});
+
+    private JsonCodec()
+    {
+    }
+
+    /**
+     * Read an account from a JSON stream
+     *
+     * @param json, a stream containing a JSON account
+     * @return the account
+     * @throws IOException if the stream does not contain a valid account
+     */
+    public static Account readAccount(InputStream json) throws IOException
+    {
+        return ACCOUNT_READER.readValue(json);
+    }
+
+    /**
+     * Read a message from a JSON stream
+     *
+     * @param json, a stream containing a JSON message
+     * @return the message
+     * @throws IOException if the stream does not contain a valid message
+     */
+    public static Message readMessage(InputStream json) throws IOException
+    {
+        return MESSAGE_READER.readValue(json);
+    }
+
+    /**
+     * Read a list of messages from a JSON stream
+     *
+     * @param json, a stream containing a JSON array of messages
+     * @return the messages
+     * @throws IOException if the stream does not contain a valid array of messages
+     */
+    public static List<Message> readMessageList(InputStream json) throws IOException
+    {
+        return MESSAGE_LIST_READER.readValue(json);
+    }
+
+    /**
+     * Serialize a value straight to an output stream, without building an intermediate String. The stream is left
+     * open.
+     *
+     * @param out, the stream to write to
+     * @param writer, a writer resolved for the type of value
+     * @param value, the value to serialize
+     * @throws IOException if the value could not be written
+     */
+    public static void write(OutputStream out, ObjectWriter writer, Object value) throws IOException
+    {
+        writer.writeValue(out, value);
+    }
+}
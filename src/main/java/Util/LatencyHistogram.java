@@ -0,0 +1,134 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free latency histogram with log-linear buckets, in the style of HdrHistogram. Each power of two range of
+ * nanoseconds is split into SUB_BUCKETS equal buckets, so any recorded value is reported to within about 3% while
+ * the whole histogram needs only a few thousand counters. Recording is a handful of arithmetic operations and one
+ * atomic increment, so it is cheap enough for every request.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Values up to 2^40 nanoseconds (about 18 minutes) are tracked. Larger values are counted in the last bucket.
+     */
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param nanos, the latency to record, in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        if(nanos < 0)
+        {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalCount.increment();
+        totalNanos.add(nanos);
+        long max = maxNanos.get();
+        while(nanos > max && !maxNanos.compareAndSet(max, nanos))
+        {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount()
+    {
+        return totalCount.sum();
+    }
+
+    /**
+     * @return the sum of every value recorded, in nanoseconds
+     */
+    public long getTotalNanos()
+    {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return the largest value recorded, in nanoseconds
+     */
+    public long getMaxNanos()
+    {
+        return maxNanos.get();
+    }
+
+    /**
+     * @param percentile, between 0 and 100
+     * @return the smallest bucket upper bound at or below which the given percentage of values fall, in nanoseconds
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++)
+        {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if(total == 0)
+        {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += snapshot[i];
+            if(seen >= target)
+            {
+                return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Values below SUB_BUCKETS get a bucket each. Above that, the magnitude (position of the highest set bit) picks a
+     * group of SUB_BUCKETS buckets, and the next SUB_BUCKET_BITS bits pick the bucket within the group.
+     */
+    static int bucketIndex(long nanos)
+    {
+        if(nanos < SUB_BUCKETS)
+        {
+            return (int) nanos;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        if(magnitude > MAX_MAGNITUDE)
+        {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (nanos >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value that falls into the given bucket
+     */
+    static long bucketUpperBound(int index)
+    {
+        if(index < SUB_BUCKETS)
+        {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
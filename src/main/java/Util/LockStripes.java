@@ -0,0 +1,36 @@
+package Util;
+
+/**
+ * A fixed set of monitors shared out among int keys, so that operations on the same key run one at a time while
+ * operations on different keys mostly do not wait for each other. Two keys may share a monitor.
+ */
+public class LockStripes
+{
+    private final Object[] stripes;
+
+    /**
+     * @param count, the number of monitors, which must be a power of two
+     */
+    public LockStripes(int count)
+    {
+        if(Integer.bitCount(count) != 1)
+        {
+            throw new IllegalArgumentException("The number of stripes must be a power of two: " + count);
+        }
+        stripes = new Object[count];
+        for(int i = 0; i < count; i++)
+        {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * @param key, the key to lock
+     * @return the monitor to synchronize on while operating on the key
+     */
+    public Object get(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,190 @@
+package Util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The Metrics class collects process wide request and query statistics and renders them in the Prometheus text
+ * exposition format. Requests are counted per route and status code and their latencies recorded in a
+ * LatencyHistogram per route; database statements are timed per sql text. Gauges can be registered for any other
+ * value worth exposing, such as cache and pool statistics.
+ *
+ * Recording never takes a lock, so it is safe to call on every request.
+ */
+public class Metrics
+{
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> queries = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    private Metrics()
+    {
+    }
+
+    /**
+     * Record one handled request
+     *
+     * @param method, the HTTP method
+     * @param route, the route pattern that matched, eg /messages/{message_id}
+     * @param status, the response status code
+     * @param nanos, how long the request took to handle
+     */
+    public static void recordRequest(String method, String route, int status, long nanos)
+    {
+        RouteMetrics metrics = routes.computeIfAbsent(method + " " + route, key -> new RouteMetrics(method, route));
+        metrics.statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        metrics.latency.record(nanos);
+    }
+
+    /**
+     * Record one execution of a database statement
+     *
+     * @param sql, the sql text of the statement
+     * @param nanos, how long the statement took to execute
+     */
+    public static void recordQuery(String sql, long nanos)
+    {
+        queries.computeIfAbsent(sql, key -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Register a gauge, replacing any gauge already registered under the same name
+     *
+     * @param name, the metric name, eg message_cache_hits
+     * @param help, a one line description of the metric
+     * @param value, read each time the metrics are rendered
+     */
+    public static void registerGauge(String name, String help, DoubleSupplier value)
+    {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    /**
+     * @param method, the HTTP method
+     * @param route, the route pattern
+     * @return the latency histogram for a route, or null if it has not handled any requests
+     */
+    public static LatencyHistogram getRouteLatency(String method, String route)
+    {
+        RouteMetrics metrics = routes.get(method + " " + route);
+        return metrics != null ? metrics.latency : null;
+    }
+
+    /**
+     * @return every metric in the Prometheus text exposition format
+     */
+    public static String render()
+    {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP http_requests_total Requests handled, by route and status code.\n");
+        out.append("# TYPE http_requests_total counter\n");
+        for(RouteMetrics metrics : sorted(routes).values())
+        {
+            for(Map.Entry<Integer, LongAdder> status : new TreeMap<>(metrics.statuses).entrySet())
+            {
+                out.append("http_requests_total{method=\"").append(metrics.method)
+                        .append("\",route=\"").append(escape(metrics.route))
+                        .append("\",status=\"").append(status.getKey()).append("\"} ")
+                        .append(status.getValue().sum()).append('\n');
+            }
+        }
+
+        out.append("# HELP http_request_duration_seconds Request latency, by route.\n");
+        out.append("# TYPE http_request_duration_seconds summary\n");
+        for(RouteMetrics metrics : sorted(routes).values())
+        {
+            String labels = "method=\"" + metrics.method + "\",route=\"" + escape(metrics.route) + "\"";
+            appendSummary(out, "http_request_duration_seconds", labels, metrics.latency);
+        }
+
+        out.append("# HELP db_query_duration_seconds Statement execution time, by sql text.\n");
+        out.append("# TYPE db_query_duration_seconds summary\n");
+        for(Map.Entry<String, LatencyHistogram> query : sorted(queries).entrySet())
+        {
+            appendSummary(out, "db_query_duration_seconds", "sql=\"" + escape(query.getKey()) + "\"", query.getValue());
+        }
+
+        for(Map.Entry<String, Gauge> gauge : sorted(gauges).entrySet())
+        {
+            out.append("# HELP ").append(gauge.getKey()).append(' ').append(gauge.getValue().help).append('\n');
+            out.append("# TYPE ").append(gauge.getKey()).append(" gauge\n");
+            out.append(gauge.getKey()).append(' ').append(gauge.getValue().value.getAsDouble()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void appendSummary(StringBuilder out, String name, String labels, LatencyHistogram histogram)
+    {
+        for(double quantile : QUANTILES)
+        {
+            out.append(name).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtPercentile(quantile * 100) / 1e9).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ").append(histogram.getTotalNanos() / 1e9).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+    }
+
+    private static <V> Map<String, V> sorted(Map<String, V> map)
+    {
+        return new TreeMap<>(map);
+    }
+
+    /**
+     * Escape a label value as required by the Prometheus text format
+     */
+    private static String escape(String value)
+    {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for(int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch(c)
+            {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '"':
+                    escaped.append("\\\"");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static class RouteMetrics
+    {
+        final String method;
+        final String route;
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        RouteMetrics(String method, String route)
+        {
+            this.method = method;
+            this.route = route;
+        }
+    }
+
+    private static class Gauge
+    {
+        final String help;
+        final DoubleSupplier value;
+
+        Gauge(String help, DoubleSupplier value)
+        {
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
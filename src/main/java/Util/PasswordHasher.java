@@ -0,0 +1,189 @@
+package Util;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The PasswordHasher hashes and verifies passwords with PBKDF2-HMAC-SHA256 and a random salt per password. Stored
+ * hashes have the form pbkdf2$iterations$salt$hash, with the salt and hash in base64, so the iteration count can be
+ * raised later without invalidating existing hashes.
+ *
+ * Hashing is deliberately slow, so it runs on a small executor of its own rather than on the request thread, and the
+ * executor's queue is bounded: when more logins and registrations arrive than the executor can keep up with, the
+ * excess is rejected with a RejectedExecutionException straight away instead of tying up request threads that the
+ * message endpoints need.
+ *
+ * A stored value without the pbkdf2$ prefix is a plaintext password from before hashing was introduced. It is still
+ * accepted, compared in constant time, and needsRehash() reports that it should be replaced.
+ */
+public class PasswordHasher
+{
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param iterations, the PBKDF2 iteration count for new hashes
+     * @param threads, the number of threads hashing at once
+     * @param queueSize, the number of hashes that may wait for a thread before further requests are rejected
+     * @param timeoutMillis, how long a caller waits for its hash before giving up
+     */
+    public PasswordHasher(int iterations, int threads, int queueSize, long timeoutMillis)
+    {
+        this.iterations = iterations;
+        this.timeoutMillis = timeoutMillis;
+        this.executor = BoundedExecutor.create("password-hasher", threads, queueSize);
+    }
+
+    /**
+     * @return a hasher configured by the accounts.password.* system properties: iterations (default 100000), threads
+     * (default half the processors), queueSize (default 64) and timeoutMillis (default 5000)
+     */
+    public static PasswordHasher fromSystemProperties()
+    {
+        return new PasswordHasher(Integer.getInteger("accounts.password.iterations", 100000),
+                Integer.getInteger("accounts.password.threads",
+                        Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Integer.getInteger("accounts.password.queueSize", 64),
+                Long.getLong("accounts.password.timeoutMillis", 5000));
+    }
+
+    /**
+     * Hash a password on the hashing executor
+     *
+     * @param password, the plaintext password
+     * @return the value to store
+     * @throws RejectedExecutionException if the hashing executor is saturated, or the hash took longer than the timeout
+     */
+    public String hash(String password)
+    {
+        return await(executor.submit(() -> hashNow(password, iterations)));
+    }
+
+    /**
+     * Check a password against a stored value on the hashing executor
+     *
+     * @param password, the plaintext password being tried
+     * @param stored, the stored hash, or a legacy plaintext password
+     * @return true if the password matches
+     * @throws RejectedExecutionException if the hashing executor is saturated, or the check took longer than the
+     * timeout
+     */
+    public boolean verify(String password, String stored)
+    {
+        if(stored == null)
+        {
+            return false;
+        }
+        if(!stored.startsWith(PREFIX))
+        {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        return await(executor.submit(() -> verifyNow(password, stored)));
+    }
+
+    /**
+     * @param stored, a stored hash or legacy plaintext password
+     * @return true if the value is plaintext or was hashed with a different iteration count
+     */
+    public boolean needsRehash(String stored)
+    {
+        if(stored == null || !stored.startsWith(PREFIX))
+        {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        return parts.length != 4 || !parts[1].equals(String.valueOf(iterations));
+    }
+
+    /**
+     * @return the number of hashes waiting for a thread
+     */
+    public int getQueueSize()
+    {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stop the hashing threads once the queued work is done
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    private String hashNow(String password, int iterations) throws GeneralSecurityException
+    {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    private static boolean verifyNow(String password, String stored) throws GeneralSecurityException
+    {
+        String[] parts = stored.split("\\$");
+        if(parts.length != 4)
+        {
+            return false;
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] expected = decoder.decode(parts[3]);
+        byte[] actual = pbkdf2(password, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) throws GeneralSecurityException
+    {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try
+        {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        }
+        finally
+        {
+            spec.clearPassword();
+        }
+    }
+
+    private <T> T await(Future<T> future)
+    {
+        try
+        {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch(TimeoutException e)
+        {
+            future.cancel(true);
+            throw new RejectedExecutionException("Password hashing took longer than " + timeoutMillis + "ms");
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a password hash", e);
+        }
+        catch(ExecutionException e)
+        {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of JDBC connections. Connections are created lazily up to maxSize, and minSize connections are
+ * opened up front and kept open so the database is never closed between requests.
+ *
+ * Every checked-out connection is a proxy: calling close() on it returns the physical connection to the pool. A
+ * background task reports connections that have been checked out for longer than the leak threshold, along with
+ * the stack trace of the code that checked them out.
+ */
+public class PooledConnectionProvider implements ConnectionProvider
+{
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    /**
+     * Idle physical connections. Used as a stack so that the most recently returned (warmest) connection is reused.
+     */
+    private final LinkedBlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+    /**
+     * One permit per connection that may still be checked out.
+     */
+    private final Semaphore permits;
+    private final Map<PooledConnection, Boolean> checkedOut = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService leakDetector;
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param url, the JDBC url of the database
+     * @param username, the database username
+     * @param password, the database password
+     * @param minSize, the number of connections opened up front and kept idle
+     * @param maxSize, the maximum number of connections that may be checked out at once
+     * @param acquireTimeoutMillis, how long getConnection() waits for a free connection before failing
+     * @param leakThresholdMillis, how long a connection may be checked out before it is reported as leaked, or 0 to
+     *                             disable leak detection
+     * @param statementCacheSize, the number of prepared statements cached per connection, or 0 to disable caching
+     */
+    public PooledConnectionProvider(String url, String username, String password, int minSize, int maxSize,
+                                    long acquireTimeoutMillis, long leakThresholdMillis, int statementCacheSize)
+    {
+        if(minSize < 0 || maxSize < 1 || minSize > maxSize)
+        {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        for(int i = 0; i < minSize; i++)
+        {
+            try
+            {
+                idle.push(openPhysicalConnection());
+            }
+            catch(SQLException e)
+            {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        if(leakThresholdMillis > 0)
+        {
+            leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "connection-leak-detector");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(leakThresholdMillis / 2, 1);
+            leakDetector.scheduleAtFixedRate(this::reportLeaks, period, period, TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            leakDetector = null;
+        }
+    }
+
+    /**
+     * Check out a connection, waiting up to the acquisition timeout for one to become free.
+     *
+     * @return a pooled connection which is returned to the pool when closed
+     * @throws SQLException if the pool is shut down, the timeout elapses, or a new connection cannot be opened
+     */
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        if(shutdown)
+        {
+            throw new SQLException("Connection pool has been shut down");
+        }
+        try
+        {
+            if(!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                throw new SQLException("Timed out after " + acquireTimeoutMillis + "ms waiting for a connection ("
+                        + maxSize + " of " + maxSize + " in use)");
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try
+        {
+            PhysicalConnection physical = idle.pollFirst();
+            while(physical != null && physical.connection.isClosed())
+            {
+                physical.statements.close();
+                physical = idle.pollFirst();
+            }
+            if(physical == null)
+            {
+                physical = openPhysicalConnection();
+            }
+            PooledConnection pooled = new PooledConnection(physical);
+            checkedOut.put(pooled, Boolean.TRUE);
+            return pooled.proxy;
+        }
+        catch(SQLException | RuntimeException e)
+        {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close every idle connection and stop the leak detector. Checked-out connections are closed when returned.
+     */
+    @Override
+    public void shutdown()
+    {
+        shutdown = true;
+        if(leakDetector != null)
+        {
+            leakDetector.shutdownNow();
+        }
+        PhysicalConnection physical;
+        while((physical = idle.pollFirst()) != null)
+        {
+            closeQuietly(physical);
+        }
+    }
+
+    /**
+     * @return the number of connections currently checked out
+     */
+    public int getActiveCount()
+    {
+        return checkedOut.size();
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool
+     */
+    public int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    /**
+     * @return the minimum number of connections kept open
+     */
+    public int getMinSize()
+    {
+        return minSize;
+    }
+
+    /**
+     * @return the maximum number of connections that may be checked out at once
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    private PhysicalConnection openPhysicalConnection() throws SQLException
+    {
+        return new PhysicalConnection(DriverManager.getConnection(url, username, password), statementCacheSize);
+    }
+
+    /**
+     * Return a physical connection to the pool, resetting any state the borrower may have changed.
+     */
+    private void release(PooledConnection pooled)
+    {
+        if(checkedOut.remove(pooled) == null)
+        {
+            return;
+        }
+        PhysicalConnection physical = pooled.physical;
+        try
+        {
+            if(shutdown || physical.connection.isClosed())
+            {
+                closeQuietly(physical);
+            }
+            else
+            {
+                physical.statements.releaseAll();
+                if(!physical.connection.getAutoCommit())
+                {
+                    physical.connection.rollback();
+                    physical.connection.setAutoCommit(true);
+                }
+                if(idle.size() < maxSize)
+                {
+                    idle.push(physical);
+                }
+                else
+                {
+                    closeQuietly(physical);
+                }
+            }
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+            closeQuietly(physical);
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    private void reportLeaks()
+    {
+        long now = System.currentTimeMillis();
+        for(PooledConnection pooled : checkedOut.keySet())
+        {
+            if(!pooled.leakReported && now - pooled.checkedOutAt > leakThresholdMillis)
+            {
+                pooled.leakReported = true;
+                System.out.println("Possible connection leak: connection checked out by thread '"
+                        + pooled.ownerThread + "' has not been returned after " + (now - pooled.checkedOutAt) + "ms");
+                pooled.checkoutTrace.printStackTrace(System.out);
+            }
+        }
+    }
+
+    private static void closeQuietly(PhysicalConnection physical)
+    {
+        physical.statements.close();
+        try
+        {
+            physical.connection.close();
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * An open database connection together with its prepared statement cache.
+     */
+    private static class PhysicalConnection
+    {
+        final Connection connection;
+        final StatementCache statements;
+
+        PhysicalConnection(Connection connection, int statementCacheSize)
+        {
+            this.connection = connection;
+            this.statements = new StatementCache(connection, statementCacheSize);
+        }
+    }
+
+    /**
+     * The invocation handler behind each checked-out connection proxy. close() returns the physical connection to
+     * the pool and prepareStatement() goes through the connection's statement cache; any other call after close()
+     * fails, so a borrower cannot keep using a connection it gave back.
+     */
+    private class PooledConnection implements InvocationHandler
+    {
+        final PhysicalConnection physical;
+        final Connection proxy;
+        final long checkedOutAt = System.currentTimeMillis();
+        final String ownerThread = Thread.currentThread().getName();
+        final Exception checkoutTrace = leakThresholdMillis > 0 ? new Exception("Connection checked out here") : null;
+        volatile boolean leakReported = false;
+        private volatile boolean closed = false;
+
+        PooledConnection(PhysicalConnection physical)
+        {
+            this.physical = physical;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch(method.getName())
+            {
+                case "close":
+                    if(!closed)
+                    {
+                        closed = true;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical.connection + "]";
+                default:
+                    if(closed)
+                    {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    if(method.getName().equals("prepareStatement") && args.length <= 2
+                            && (args.length == 1 || args[1] instanceof Integer))
+                    {
+                        int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                        return physical.statements.prepare((String) args[0], autoGeneratedKeys);
+                    }
+                    try
+                    {
+                        return method.invoke(physical.connection, args);
+                    }
+                    catch(InvocationTargetException e)
+                    {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
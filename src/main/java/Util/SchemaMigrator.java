@@ -0,0 +1,131 @@
+package Util;
+
+import org.h2.tools.RunScript;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The SchemaMigrator applies versioned sql scripts on top of the base schema in SocialMedia.sql. Scripts live in a
+ * single directory and are named V{version}__{description}.sql, eg V1__add_lookup_indexes.sql. Each script is
+ * applied at most once, in version order, and recorded in the schema_version table.
+ */
+public class SchemaMigrator
+{
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private final String migrationsDirectory;
+
+    /**
+     * @param migrationsDirectory, the directory containing the migration scripts
+     */
+    public SchemaMigrator(String migrationsDirectory)
+    {
+        this.migrationsDirectory = migrationsDirectory;
+    }
+
+    /**
+     * Apply every migration newer than the current schema version
+     *
+     * @param connection, the connection to migrate the database through
+     * @return the number of migrations applied
+     * @throws SQLException if a migration fails. Migrations applied before the failing one are kept
+     * @throws IOException if a migration script cannot be read
+     */
+    public int migrate(Connection connection) throws SQLException, IOException
+    {
+        try(Statement statement = connection.createStatement())
+        {
+            statement.execute("create table if not exists schema_version (" +
+                    "version int primary key, " +
+                    "description varchar(255), " +
+                    "applied_on timestamp default current_timestamp)");
+        }
+
+        int currentVersion = getCurrentVersion(connection);
+        int applied = 0;
+        for(Migration migration : findMigrations())
+        {
+            if(migration.version <= currentVersion)
+            {
+                continue;
+            }
+            try(FileReader reader = new FileReader(migration.file))
+            {
+                RunScript.execute(connection, reader);
+            }
+            try(PreparedStatement preparedStatement = connection.prepareStatement(
+                    "insert into schema_version (version, description) values (?, ?)"))
+            {
+                preparedStatement.setInt(1, migration.version);
+                preparedStatement.setString(2, migration.description);
+                preparedStatement.executeUpdate();
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * @param connection, the connection to query through
+     * @return the version of the newest migration applied, or 0 if none have been
+     * @throws SQLException if the schema_version table cannot be read
+     */
+    public int getCurrentVersion(Connection connection) throws SQLException
+    {
+        try(Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery("select coalesce(max(version), 0) from schema_version"))
+        {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * @return every migration script in the migrations directory, ordered by version
+     */
+    private List<Migration> findMigrations()
+    {
+        List<Migration> migrations = new ArrayList<>();
+        File[] files = new File(migrationsDirectory).listFiles();
+        if(files == null)
+        {
+            return migrations;
+        }
+        for(File file : files)
+        {
+            Matcher matcher = SCRIPT_NAME.matcher(file.getName());
+            if(matcher.matches())
+            {
+                migrations.add(new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2).replace('_', ' '), file));
+            }
+        }
+        migrations.sort(Comparator.comparingInt(migration -> migration.version));
+        return migrations;
+    }
+
+    private static class Migration
+    {
+        final int version;
+        final String description;
+        final File file;
+
+        Migration(int version, String description, File file)
+        {
+            this.version = version;
+            this.description = description;
+            this.file = file;
+        }
+    }
+}
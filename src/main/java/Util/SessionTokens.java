@@ -0,0 +1,158 @@
+package Util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * SessionTokens issues and verifies stateless session tokens. A token has the form account_id.expiresAt.signature,
+ * where expiresAt is in epoch milliseconds and the signature is an HMAC-SHA256 of the first two parts in unpadded
+ * base64url. Nothing is stored when a token is issued, so any instance holding the same key can verify it.
+ *
+ * Verified tokens are cached, so a client sending the same token on every request pays for the HMAC once; a cached
+ * token is still checked against its expiry on each use.
+ */
+public class SessionTokens
+{
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final BoundedCache<String, Session> verified;
+
+    /**
+     * @param key, the HMAC key tokens are signed with
+     * @param ttlMillis, how long a token is valid after it is issued
+     * @param cacheMaxSize, the most verified tokens held in memory
+     */
+    public SessionTokens(byte[] key, long ttlMillis, int cacheMaxSize)
+    {
+        this.key = new SecretKeySpec(key, ALGORITHM);
+        this.ttlMillis = ttlMillis;
+        this.verified = new BoundedCache<>(cacheMaxSize, ttlMillis);
+    }
+
+    /**
+     * @return tokens configured by the sessions.* system properties: secret (a base64 key, default a random key per
+     * process, so tokens do not survive a restart), ttlMillis (default 3600000) and cacheMaxSize (default 10000)
+     */
+    public static SessionTokens fromSystemProperties()
+    {
+        String secret = System.getProperty("sessions.secret");
+        byte[] key;
+        if(secret != null)
+        {
+            key = Base64.getDecoder().decode(secret.trim());
+        }
+        else
+        {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        }
+        return new SessionTokens(key, Long.getLong("sessions.ttlMillis", 3600000),
+                Integer.getInteger("sessions.cacheMaxSize", 10000));
+    }
+
+    /**
+     * @param account_id, the account the token identifies
+     * @return a signed token for the account, valid for the configured time to live
+     */
+    public String issue(int account_id)
+    {
+        String payload = account_id + "." + (System.currentTimeMillis() + ttlMillis);
+        return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(payload));
+    }
+
+    /**
+     * @param token, a token sent by a client
+     * @return the account_id the token identifies, or null if it is malformed, forged or expired
+     */
+    public Integer verify(String token)
+    {
+        Session session = verified.get(token);
+        if(session == null)
+        {
+            session = parse(token);
+            if(session == null)
+            {
+                return null;
+            }
+            verified.put(token, session);
+        }
+        return System.currentTimeMillis() < session.expiresAt ? session.account_id : null;
+    }
+
+    /**
+     * @return the number of verified tokens held in memory
+     */
+    public int getCacheSize()
+    {
+        return verified.size();
+    }
+
+    private Session parse(String token)
+    {
+        int signatureStart = token.lastIndexOf('.');
+        int expiryStart = token.indexOf('.');
+        if(expiryStart <= 0 || signatureStart <= expiryStart)
+        {
+            return null;
+        }
+        String payload = token.substring(0, signatureStart);
+        byte[] signature;
+        try
+        {
+            signature = Base64.getUrlDecoder().decode(token.substring(signatureStart + 1));
+        }
+        catch(IllegalArgumentException e)
+        {
+            return null;
+        }
+        if(!MessageDigest.isEqual(sign(payload), signature))
+        {
+            return null;
+        }
+        try
+        {
+            return new Session(Integer.parseInt(token.substring(0, expiryStart)),
+                    Long.parseLong(token.substring(expiryStart + 1, signatureStart)));
+        }
+        catch(NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        }
+        catch(GeneralSecurityException e)
+        {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    /**
+     * The contents of a token whose signature has been checked
+     */
+    private static class Session
+    {
+        final int account_id;
+        final long expiresAt;
+
+        Session(int account_id, long expiresAt)
+        {
+            this.account_id = account_id;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A least-recently-used cache of prepared statements for a single physical connection, keyed by sql text.
+ *
+ * Statements handed out by the cache are proxies: calling close() clears their parameters and returns them to the
+ * cache instead of closing them. Each prepare() hands out a new proxy, which refuses further use once it is closed. A statement that is evicted to make room is closed for real. If the same sql is
+ * prepared again while its cached statement is still in use, an ordinary uncached statement is returned.
+ *
+ * Hit, miss and eviction counts are totalled across every cache in the process. Every statement the cache hands out,
+ * cached or not, records its execution time in Metrics under its sql text.
+ */
+public class StatementCache
+{
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    private final Connection connection;
+    private final int capacity;
+    private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param connection, the physical connection that statements are prepared on
+     * @param capacity, the maximum number of statements kept open for this connection
+     */
+    public StatementCache(Connection connection, int capacity)
+    {
+        this.connection = connection;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Return a prepared statement for the given sql, reusing a cached one when possible.
+     *
+     * @param sql, the sql text of the statement
+     * @param autoGeneratedKeys, either Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @return a prepared statement which must be closed by the caller
+     * @throws SQLException if the statement could not be prepared
+     */
+    public synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException
+    {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+        CachedStatement cached = statements.get(key);
+        if(cached != null && !cached.inUse)
+        {
+            hits.incrementAndGet();
+            return cached.borrow();
+        }
+        misses.incrementAndGet();
+        PreparedStatement physical = connection.prepareStatement(sql, autoGeneratedKeys);
+        if(cached != null || capacity <= 0)
+        {
+            return new CachedStatement(sql, physical, false).borrow();
+        }
+        cached = new CachedStatement(sql, physical, true);
+        PreparedStatement proxy = cached.borrow();
+        statements.put(key, cached);
+        evictIfNeeded();
+        return proxy;
+    }
+
+    /**
+     * Mark every cached statement as free. Called when the connection is returned to its pool, so a statement that a
+     * borrower forgot to close can still be reused.
+     */
+    public synchronized void releaseAll()
+    {
+        for(CachedStatement cached : statements.values())
+        {
+            cached.inUse = false;
+            cached.lease = null;
+        }
+    }
+
+    /**
+     * Close every cached statement.
+     */
+    public synchronized void close()
+    {
+        for(CachedStatement cached : statements.values())
+        {
+            closeQuietly(cached.physical);
+        }
+        statements.clear();
+    }
+
+    /**
+     * @return the number of statements currently cached for this connection
+     */
+    public synchronized int size()
+    {
+        return statements.size();
+    }
+
+    /**
+     * @return the number of prepare calls, across every connection, that reused a cached statement
+     */
+    public static long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of prepare calls, across every connection, that had to parse the sql
+     */
+    public static long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of statements, across every connection, that were closed to make room for others
+     */
+    public static long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    private void evictIfNeeded()
+    {
+        Iterator<Map.Entry<String, CachedStatement>> iterator = statements.entrySet().iterator();
+        while(statements.size() > capacity && iterator.hasNext())
+        {
+            CachedStatement eldest = iterator.next().getValue();
+            if(!eldest.inUse)
+            {
+                iterator.remove();
+                closeQuietly(eldest.physical);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static void closeQuietly(Statement statement)
+    {
+        try
+        {
+            statement.close();
+        }
+        catch(SQLException e)
+        {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * A statement kept open by the cache, or an uncached one handed out when its cached copy is in use
+     */
+    private class CachedStatement
+    {
+        final String sql;
+        final PreparedStatement physical;
+        final boolean cached;
+        boolean inUse;
+        /**
+         * The lease the statement is currently handed out under, or null if it is free
+         */
+        volatile Lease lease;
+
+        CachedStatement(String sql, PreparedStatement physical, boolean cached)
+        {
+            this.sql = sql;
+            this.physical = physical;
+            this.cached = cached;
+        }
+
+        /**
+         * @return a new proxy for the statement, which stays usable until it is closed or the statement is released
+         */
+        PreparedStatement borrow()
+        {
+            inUse = true;
+            lease = new Lease(this);
+            return lease.proxy;
+        }
+    }
+
+    /**
+     * The invocation handler behind each statement handed out. close() hands a cached statement back to the cache and
+     * closes an uncached one; after that every call but close() and isClosed() fails as it would on a closed
+     * statement, so a stale reference cannot use a statement another borrower now holds. The execute methods are
+     * timed.
+     */
+    private class Lease implements InvocationHandler
+    {
+        final CachedStatement statement;
+        final PreparedStatement proxy;
+        volatile boolean closed;
+
+        Lease(CachedStatement statement)
+        {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch(method.getName())
+            {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return isReleased() || statement.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + statement.physical + "]";
+                default:
+                    break;
+            }
+            if(isReleased())
+            {
+                throw new SQLException("Statement is closed");
+            }
+            switch(method.getName())
+            {
+                case "execute":
+                case "executeQuery":
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                case "executeBatch":
+                case "executeLargeBatch":
+                    long start = System.nanoTime();
+                    try
+                    {
+                        return method.invoke(statement.physical, args);
+                    }
+                    catch(InvocationTargetException e)
+                    {
+                        throw e.getCause();
+                    }
+                    finally
+                    {
+                        Metrics.recordQuery(statement.sql, System.nanoTime() - start);
+                    }
+                default:
+                    try
+                    {
+                        return method.invoke(statement.physical, args);
+                    }
+                    catch(InvocationTargetException e)
+                    {
+                        throw e.getCause();
+                    }
+            }
+        }
+
+        private void close() throws SQLException
+        {
+            if(!statement.cached)
+            {
+                closed = true;
+                statement.physical.close();
+                return;
+            }
+            synchronized(StatementCache.this)
+            {
+                if(closed)
+                {
+                    return;
+                }
+                closed = true;
+                if(statement.lease == this)
+                {
+                    statement.physical.clearParameters();
+                    statement.physical.clearBatch();
+                    statement.inUse = false;
+                    statement.lease = null;
+                }
+            }
+        }
+
+        /**
+         * @return true once this lease has been closed, or its statement released to the cache by releaseAll()
+         */
+        private boolean isReleased()
+        {
+            return closed || (statement.cached && statement.lease != this);
+        }
+    }
+}
@@ -1,5 +1,10 @@
+drop table if exists schema_version;
+drop table if exists message_log_checkpoint;
+drop table if exists follow;
 drop table if exists message;
 drop table if exists account;
+drop sequence if exists message_id_seq;
+drop sequence if exists account_id_seq;
 create table account (
     account_id int primary key auto_increment,
     username varchar(255) unique,
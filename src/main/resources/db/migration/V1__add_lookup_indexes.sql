@@ -0,0 +1,4 @@
+-- getMessagesByUser filters on posted_by and returns each user's messages in time_posted_epoch order
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch);
+-- loginAccount filters on both username and password. account_id is the row key, so the index covers the query
+create index if not exists account_username_password_idx on account (username, password);
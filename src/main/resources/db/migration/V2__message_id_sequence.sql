@@ -0,0 +1,6 @@
+-- Message ids come from a sequence instead of the identity column, so they can be reserved before the row is written.
+-- The sequence starts after the largest existing id, and plain inserts keep getting their id from it by default.
+execute immediate 'create sequence if not exists message_id_seq start with '
+    || (select coalesce(max(message_id), 0) + 1 from message);
+alter table message alter column message_id drop identity;
+alter table message alter column message_id set default next value for message_id_seq;
@@ -0,0 +1,7 @@
+-- Ids are reserved 50 at a time: each next value for a sequence reserves the value returned and the 49 after it.
+-- IdAllocator reads the increment, so the block size is only set here.
+alter sequence message_id_seq increment by 50;
+execute immediate 'create sequence if not exists account_id_seq start with '
+    || (select coalesce(max(account_id), 0) + 1 from account) || ' increment by 50';
+alter table account alter column account_id drop identity;
+alter table account alter column account_id set default next value for account_id_seq;
@@ -0,0 +1,4 @@
+-- getMessagesBetween filters all messages on a time_posted_epoch range and returns them in time order. message_id is
+-- part of the key so that messages posted in the same second are also read in order. Ranges for one account use
+-- message_posted_by_time_idx
+create index if not exists message_time_posted_idx on message (time_posted_epoch, message_id);
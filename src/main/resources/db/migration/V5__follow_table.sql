@@ -0,0 +1,10 @@
+-- Who follows whom. The primary key answers "whom does an account follow" and stops an account following another
+-- twice; follow_followee_idx answers "who follows an account", which fan-out on write needs for every new message
+create table if not exists follow (
+    follower_id int not null,
+    followee_id int not null,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
+create index if not exists follow_followee_idx on follow (followee_id, follower_id);
@@ -0,0 +1,6 @@
+-- The token the message log was last closed with. The log is only trusted on startup if its header holds the same
+-- token, so a log that missed changes, or a database recreated underneath it, is rewritten instead
+create table if not exists message_log_checkpoint (
+    id int primary key,
+    token int not null
+);
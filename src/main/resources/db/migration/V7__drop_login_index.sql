@@ -0,0 +1,3 @@
+-- Logins now look accounts up by username alone and verify the password hash in the application, so nothing queries
+-- by username and password any more and the index added in V1 was only a cost on every registration and password rehash
+drop index if exists account_username_password_idx;
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.ExecutionMode;
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AsyncExecutionModeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with its handlers running on the async executor,
+     * and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController(ExecutionMode.ASYNC);
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages and then GET localhost:8080/messages/2 in async mode
+     * 
+     * Expected Response:
+     *  Status Code: 200 for both
+     *  Response Body: the created message, then the same message read back
+     */
+    @Test
+    public void createAndGetMessageAsync() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> postResponse = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, postResponse.statusCode());
+        Message expected = new Message(2, 1, "hello message", 1669947792);
+        Assert.assertEquals(expected, objectMapper.readValue(postResponse.body(), Message.class));
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, getResponse.statusCode());
+        Assert.assertEquals(expected, objectMapper.readValue(getResponse.body(), Message.class));
+
+        HttpRequest getAllRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> getAllResponse = webClient.send(getAllRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(getAllResponse.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=0 in async mode
+     * 
+     * Expected Response:
+     *  Status Code: 400, the validation error thrown on the executor is handled like any other
+     */
+    @Test
+    public void invalidLimitAsync() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=0"))
+                .build();
+        HttpResponse<String> response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
@@ -0,0 +1,40 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.BloomFilter;
+
+public class BloomFilterTest {
+
+    /**
+     * Every string that was added is reported as possibly present.
+     */
+    @Test
+    public void noFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for(int i = 0; i < 10000; i++) {
+            filter.add("user" + i);
+        }
+        for(int i = 0; i < 10000; i++) {
+            Assert.assertTrue(filter.mightContain("user" + i));
+        }
+    }
+
+    /**
+     * At capacity, strings that were never added are reported as possibly present at close to the configured rate.
+     */
+    @Test
+    public void falsePositiveRateNearConfigured() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for(int i = 0; i < 10000; i++) {
+            filter.add("user" + i);
+        }
+        int falsePositives = 0;
+        for(int i = 0; i < 100000; i++) {
+            if(filter.mightContain("stranger" + i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("False positives: " + falsePositives, falsePositives < 2000);
+        Assert.assertEquals(7, filter.getHashCount());
+    }
+}
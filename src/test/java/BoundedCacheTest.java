@@ -0,0 +1,46 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.BoundedCache;
+
+public class BoundedCacheTest {
+
+    /**
+     * A write to another key while a value is being loaded does not stop the loaded value from being cached.
+     */
+    @Test
+    public void writeToAnotherKeyKeepsLoadedValue() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, 0);
+        String loaded = cache.getOrLoad(1, key -> {
+            cache.put(2, "other");
+            cache.invalidate(3);
+            return "loaded";
+        });
+        Assert.assertEquals("loaded", loaded);
+        Assert.assertEquals("loaded", cache.peek(1));
+        Assert.assertEquals("other", cache.peek(2));
+    }
+
+    /**
+     * A value whose key is invalidated, or the whole cache cleared, while it is being loaded is returned but not
+     * cached.
+     */
+    @Test
+    public void writeToSameKeyDiscardsLoadedValue() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(10, 0);
+        Assert.assertEquals("stale", cache.getOrLoad(1, key -> {
+            cache.invalidate(1);
+            return "stale";
+        }));
+        Assert.assertNull(cache.peek(1));
+
+        Assert.assertEquals("stale", cache.getOrLoad(1, key -> {
+            cache.clear();
+            return "stale";
+        }));
+        Assert.assertNull(cache.peek(1));
+
+        Assert.assertEquals("fresh", cache.getOrLoad(1, key -> "fresh"));
+        Assert.assertEquals("fresh", cache.peek(1));
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.ColumnarMessageDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class ColumnarMessageDAOTest {
+    ColumnarMessageDAO store;
+    MessageDAO database;
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        store = new ColumnarMessageDAO();
+        database = new MessageDAO();
+    }
+
+    /**
+     * The store is loaded on first use, and afterwards answers like the database through inserts, updates and
+     * deletes, including text that is not ASCII.
+     */
+    @Test
+    public void matchesTheDatabase() {
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), store.getMessageById(1));
+        Message inserted = store.insertMessage(new Message(1, "caf\u00e9 \u2615", 1669947800));
+        Assert.assertEquals(inserted, store.getMessageById(inserted.getMessage_id()));
+        Assert.assertEquals(2, store.size());
+
+        store.updateMessage(1, new Message(1, "edited", 0));
+        Assert.assertEquals("edited", store.getMessageById(1).getMessage_text());
+        Assert.assertNotNull(store.deleteMessageById(inserted.getMessage_id()));
+        Assert.assertNull(store.getMessageById(inserted.getMessage_id()));
+
+        Assert.assertEquals(database.getAllMessages(), store.getAllMessages());
+        Assert.assertEquals(database.getMessagesByUser(1), store.getMessagesByUser(1));
+    }
+
+    /**
+     * Messages written out of message_id order are kept in order, and survive the compactions that many deletes and
+     * updates cause.
+     */
+    @Test
+    public void keepsOrderThroughCompaction() {
+        store.getMessageById(1);
+        List<Message> messages = new ArrayList<>();
+        for(int id = 5000; id > 1; id--) {
+            messages.add(new Message(id, 1, "message " + id, 1669947792 + id % 7));
+        }
+        Assert.assertTrue(store.insertMessagesWithIds(messages.subList(0, 2500)));
+        Assert.assertTrue(store.insertMessagesWithIds(messages.subList(2500, messages.size())));
+        for(int id = 2; id <= 5000; id += 2) {
+            store.deleteMessageById(id);
+        }
+        for(int id = 3; id <= 5000; id += 4) {
+            store.updateMessage(id, new Message(1, "updated " + id, 0));
+        }
+
+        Assert.assertEquals(database.getAllMessages().size(), store.size());
+        Assert.assertEquals(database.getMessagesAfter(2000, 100), store.getMessagesAfter(2000, 100));
+        Assert.assertEquals(database.getMessagesByUser(1), store.getMessagesByUser(1));
+        Assert.assertEquals("updated 4999", store.getMessageById(4999).getMessage_text());
+        Assert.assertNull(store.getMessageById(5000));
+        Assert.assertEquals(List.of(store.getMessageById(3), store.getMessageById(7)),
+                store.getMessagesByIds(List.of(3, 4, 7)));
+    }
+
+    /**
+     * Updates and deletes racing on the same messages leave the store holding exactly what the database holds; a
+     * deleted message is never brought back by an update that ran alongside its delete.
+     */
+    @Test
+    public void concurrentUpdatesAndDeletesMatchTheDatabase() throws Exception {
+        store.getMessageById(1);
+        List<Message> messages = new ArrayList<>();
+        for(int id = 2; id <= 200; id++) {
+            messages.add(new Message(id, 1, "message " + id, 1669947792));
+        }
+        Assert.assertTrue(store.insertMessagesWithIds(messages));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(int thread = 0; thread < 8; thread++) {
+                int seed = thread;
+                futures.add(executor.submit(() -> {
+                    for(int id = 2; id <= 200; id++) {
+                        if((id + seed) % 5 == 0) {
+                            store.deleteMessageById(id);
+                        }
+                        else {
+                            store.updateMessage(id, new Message(1, "thread " + seed, 0));
+                        }
+                    }
+                }));
+            }
+            for(Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(database.getAllMessages(), store.getAllMessages());
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.BatchItemResult;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessageBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a mix of valid and invalid messages
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message, in order, with the valid messages inserted and given ids in order
+     */
+    @Test
+    public void createMessageBatchReportsEachItem() throws IOException, InterruptedException {
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947792}, " +
+                        "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947792}, " +
+                        "{\"posted_by\":3, \"message_text\": \"no such user\", \"time_posted_epoch\": 1669947792}, " +
+                        "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        List<BatchItemResult> results = objectMapper.readValue(response.body(), new TypeReference<List<BatchItemResult>>(){});
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(new Message(2, 1, "first", 1669947792), results.get(0).getMessage());
+        Assert.assertNotNull(results.get(1).getError());
+        Assert.assertNotNull(results.get(2).getError());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793), results.get(3).getMessage());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(getResponse.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(3, messages.size());
+    }
+}
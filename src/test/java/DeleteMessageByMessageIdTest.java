@@ -87,5 +87,29 @@ public class DeleteMessageByMessageIdTest {
         Assert.assertEquals(200, status);
         Assert.assertTrue(response.body().toString().isEmpty());
     }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/messages/1 and then GET localhost:8080/messages/1
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: empty, as the message no longer exists
+     */
+    @Test
+    public void deletedMessageIsGone() throws IOException, InterruptedException {
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse<String> response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().isEmpty());
+    }
     
 }
@@ -0,0 +1,122 @@
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.AccountService;
+import Service.FeedService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class FeedServiceTest {
+    AccountService accountService;
+    MessageService messageService;
+    FeedService feedService;
+
+    /**
+     * Before every test, reset the database and create two more accounts. Authors with more than one follower are
+     * merged at read time, and feed buffers hold two messages.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountService = new AccountService(new AccountDAO());
+        messageService = new MessageService(new MessageDAO(), accountService);
+        feedService = new FeedService(new FollowDAO(), accountService, messageService, 1, 2, 100, 0);
+        Assert.assertEquals(2, accountService.createAccount(new Account("testuser2", "password")).getAccount_id());
+        Assert.assertEquals(3, accountService.createAccount(new Account("testuser3", "password")).getAccount_id());
+    }
+
+    @After
+    public void tearDown() {
+        accountService.close();
+    }
+
+    /**
+     * Account 1 has two followers, so its messages are read when the feed is; account 3 has one, so its messages are
+     * pushed into the buffer of account 2, which keeps the newest two whatever order they arrive in.
+     */
+    @Test
+    public void mergesPushedAndPulledAuthors() {
+        Assert.assertTrue(feedService.follow(2, 1));
+        Assert.assertTrue(feedService.follow(3, 1));
+        Assert.assertTrue(feedService.follow(2, 3));
+        Message seeded = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(List.of(seeded), feedService.getFeed(2, 10));
+
+        Message oldest = messageService.insertMessage(new Message(3, "oldest", 100));
+        Message newest = messageService.insertMessage(new Message(3, "newest", 300));
+        Message middle = messageService.insertMessage(new Message(3, "middle", 200));
+        Message fromPulled = messageService.insertMessage(new Message(1, "pulled", 250));
+        Assert.assertEquals(3, feedService.getPushCount());
+        Assert.assertEquals(List.of(seeded, newest, fromPulled, middle), feedService.getFeed(2, 10));
+        Assert.assertEquals(List.of(seeded, newest), feedService.getFeed(2, 2));
+
+        messageService.deleteMessage(newest.getMessage_id());
+        Assert.assertEquals(List.of(seeded, fromPulled, middle), feedService.getFeed(2, 10));
+        Assert.assertNotNull(oldest);
+    }
+
+    /**
+     * When account 1 drops to one follower its messages are pushed instead, so the buffer of account 2 is loaded
+     * again for both authors and keeps only the newest two of their messages.
+     */
+    @Test
+    public void reloadsBufferWhenAuthorsChange() {
+        feedService.follow(2, 1);
+        feedService.follow(3, 1);
+        feedService.follow(2, 3);
+        Message seeded = new Message(1, 1, "test message 1", 1669947792);
+        Message newest = messageService.insertMessage(new Message(3, "newest", 300));
+        messageService.insertMessage(new Message(3, "oldest", 100));
+        Assert.assertEquals(3, feedService.getFeed(2, 10).size());
+
+        Assert.assertTrue(feedService.unfollow(3, 1));
+        Assert.assertEquals(List.of(seeded, newest), feedService.getFeed(2, 10));
+    }
+
+    /**
+     * An account cannot follow itself or an account that does not exist.
+     */
+    @Test
+    public void rejectsInvalidFollows() {
+        Assert.assertFalse(feedService.follow(1, 1));
+        Assert.assertFalse(feedService.follow(1, 99));
+        Assert.assertFalse(feedService.unfollow(99, 1));
+        Assert.assertEquals(List.of(), feedService.getFollowing(1));
+    }
+
+    /**
+     * A follow the database fails to store is reported as failed and leaves the cached following list alone, and
+     * following an account already followed still succeeds.
+     */
+    @Test
+    public void reportsFollowsThatAreNotStored() {
+        Assert.assertTrue(feedService.follow(2, 1));
+        Assert.assertTrue(feedService.follow(2, 1));
+        Assert.assertEquals(List.of(1), feedService.getFollowing(2));
+
+        FeedService failingFeedService = new FeedService(new FollowDAO() {
+            @Override
+            public boolean follow(int follower_id, int followee_id) {
+                return false;
+            }
+
+            @Override
+            public boolean unfollow(int follower_id, int followee_id) {
+                return false;
+            }
+        }, accountService, messageService, 1, 2, 100, 0);
+        Assert.assertEquals(List.of(1), failingFeedService.getFollowing(2));
+        Assert.assertFalse(failingFeedService.follow(2, 3));
+        Assert.assertFalse(failingFeedService.unfollow(2, 1));
+        Assert.assertEquals(List.of(1), failingFeedService.getFollowing(2));
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class FeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, register a second account, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        Assert.assertEquals(200, send("POST", "/register", "{\"username\":\"testuser2\",\"password\":\"password\"}")
+                .statusCode());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * After account 2 follows account 1, GET localhost:8080/accounts/2/following lists account 1, and the feed of
+     * account 2 holds account 1's messages newest first, including one posted after the feed was first read.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the messages of the followed accounts, newest first
+     */
+    @Test
+    public void feedHoldsFollowedMessages() throws IOException, InterruptedException {
+        Assert.assertEquals("[]", send("GET", "/accounts/2/feed", null).body());
+        Assert.assertEquals(200, send("POST", "/accounts/2/following/1", null).statusCode());
+        Assert.assertEquals("[1]", send("GET", "/accounts/2/following", null).body());
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), feed(2, 20));
+
+        Assert.assertEquals(200, send("POST", "/messages",
+                "{\"posted_by\":1,\"message_text\":\"newer message\",\"time_posted_epoch\":1669947800}").statusCode());
+        Assert.assertEquals(List.of(new Message(2, 1, "newer message", 1669947800),
+                new Message(1, 1, "test message 1", 1669947792)), feed(2, 20));
+        Assert.assertEquals(List.of(new Message(2, 1, "newer message", 1669947800)), feed(2, 1));
+    }
+
+    /**
+     * Once account 2 unfollows account 1, its feed is empty again.
+     */
+    @Test
+    public void unfollowEmptiesFeed() throws IOException, InterruptedException {
+        send("POST", "/accounts/2/following/1", null);
+        Assert.assertEquals(1, feed(2, 20).size());
+        Assert.assertEquals(200, send("DELETE", "/accounts/2/following/1", null).statusCode());
+        Assert.assertEquals("[]", send("GET", "/accounts/2/following", null).body());
+        Assert.assertEquals("[]", send("GET", "/accounts/2/feed", null).body());
+    }
+
+    /**
+     * Following oneself or an account that does not exist is rejected.
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void followInvalidAccount() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("POST", "/accounts/1/following/1", null).statusCode());
+        Assert.assertEquals(400, send("POST", "/accounts/1/following/99", null).statusCode());
+        Assert.assertEquals(400, send("POST", "/accounts/99/following/1", null).statusCode());
+        Assert.assertEquals(400, send("GET", "/accounts/1/feed?limit=0", null).statusCode());
+    }
+
+    private List<Message> feed(int account_id, int limit) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", "/accounts/" + account_id + "/feed?limit=" + limit, null);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
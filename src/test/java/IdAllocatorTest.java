@@ -0,0 +1,59 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.IdAllocator;
+
+public class IdAllocatorTest {
+
+    /**
+     * Before every test, reset the database so that the sequences start after the seeded rows.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Ids are handed out in order from a block the size of the sequence's increment, starting after the seeded rows.
+     */
+    @Test
+    public void idsComeFromOneBlock() throws SQLException {
+        IdAllocator allocator = new IdAllocator("message_id_seq");
+        Assert.assertArrayEquals(new int[]{2, 3, 4}, allocator.next(3));
+        Assert.assertEquals(50, allocator.getBlockSize());
+    }
+
+    /**
+     * Allocators sharing a sequence, used from many threads, never hand out the same id twice.
+     */
+    @Test
+    public void idsAreUniqueAcrossThreadsAndAllocators() throws Exception {
+        IdAllocator first = new IdAllocator("account_id_seq");
+        IdAllocator second = new IdAllocator("account_id_seq");
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<int[]>> results = new ArrayList<>();
+        for(int i = 0; i < 16; i++) {
+            IdAllocator allocator = i % 2 == 0 ? first : second;
+            results.add(threads.submit(() -> allocator.next(100)));
+        }
+        Set<Integer> ids = new HashSet<>();
+        for(Future<int[]> result : results) {
+            for(int id : result.get()) {
+                Assert.assertTrue("Duplicate id " + id, ids.add(id));
+            }
+        }
+        threads.shutdown();
+        Assert.assertEquals(1600, ids.size());
+    }
+}
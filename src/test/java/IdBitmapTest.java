@@ -0,0 +1,40 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IdBitmap;
+
+public class IdBitmapTest {
+
+    /**
+     * Added ids are found, ids that were not added are not, and adding an id twice counts it once.
+     */
+    @Test
+    public void containsExactlyTheAddedIds() {
+        IdBitmap bitmap = new IdBitmap();
+        for(int id = 1; id <= 100000; id += 3) {
+            bitmap.add(id);
+        }
+        bitmap.add(1);
+        bitmap.add(Integer.MAX_VALUE);
+        for(int id = 0; id <= 100002; id++) {
+            Assert.assertEquals("id " + id, id % 3 == 1, bitmap.contains(id));
+        }
+        Assert.assertTrue(bitmap.contains(Integer.MAX_VALUE));
+        Assert.assertFalse(bitmap.contains(-1));
+        Assert.assertEquals(33335, bitmap.size());
+    }
+
+    /**
+     * Only the pages that hold ids are allocated.
+     */
+    @Test
+    public void pagesAllocatedOnDemand() {
+        IdBitmap bitmap = new IdBitmap();
+        long empty = bitmap.getMemoryBytes();
+        bitmap.add(5);
+        bitmap.add(65535);
+        Assert.assertEquals(empty + 8192, bitmap.getMemoryBytes());
+        bitmap.add(1_000_000_000);
+        Assert.assertEquals(empty + 2 * 8192, bitmap.getMemoryBytes());
+    }
+}
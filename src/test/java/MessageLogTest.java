@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageLog;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class MessageLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A reopened log replays the latest state of every message, in message_id order, growing its mapping as needed.
+     */
+    @Test
+    public void reopenedLogReplaysLatestState() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("messages.log");
+        MessageLog log = new MessageLog(path, 64, 0, 1.0);
+        log.messageInserted(new Message(2, 1, "second", 200));
+        log.messageInserted(new Message(1, 1, "first", 100));
+        log.messageInserted(new Message(3, 2, "third \u2615", 300));
+        log.messageUpdated(new Message(1, 1, "first, edited", 100));
+        log.messageDeleted(new Message(3, 2, "third \u2615", 300));
+        log.close();
+
+        log = new MessageLog(path, 64, 0, 1.0);
+        Assert.assertEquals(List.of(new Message(1, 1, "first, edited", 100), new Message(2, 1, "second", 200)),
+                replay(log));
+        Assert.assertEquals(2, log.size());
+        Assert.assertEquals(2, log.getMaxId());
+        log.close();
+    }
+
+    /**
+     * Compaction drops superseded records, keeps the live ones, and the compacted file can be reopened.
+     */
+    @Test
+    public void compactionKeepsLiveMessages() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("messages.log");
+        MessageLog log = new MessageLog(path, 1024, 0, 1.0);
+        for(int id = 1; id <= 100; id++) {
+            log.messageInserted(new Message(id, 1, "message " + id, id));
+        }
+        for(int id = 1; id <= 100; id += 2) {
+            log.messageUpdated(new Message(id, 1, "updated " + id, id));
+            log.messageDeleted(new Message(id + 1, 1, "message " + (id + 1), id + 1));
+        }
+        List<Message> expected = replay(log);
+        Assert.assertTrue(log.getGarbageBytes() > 0);
+        log.compact();
+        Assert.assertEquals(0, log.getGarbageBytes());
+        Assert.assertEquals(expected, replay(log));
+        log.messageInserted(new Message(101, 1, "after compaction", 101));
+        log.close();
+
+        log = new MessageLog(path, 1024, 0, 1.0);
+        Assert.assertEquals(51, log.size());
+        Assert.assertEquals(new Message(101, 1, "after compaction", 101), replay(log).get(50));
+        log.close();
+    }
+
+    /**
+     * A record torn by a crash is discarded on open, along with anything after it, and the log carries on from there.
+     */
+    @Test
+    public void tornRecordIsDiscarded() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("messages.log");
+        MessageLog log = new MessageLog(path, 1024, 0, 1.0);
+        log.messageInserted(new Message(1, 1, "kept", 100));
+        long tornAt = 16 + log.getLogBytes() + 8 + 17;
+        log.messageInserted(new Message(2, 1, "torn", 200));
+        log.close();
+        try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(tornAt);
+            file.write('x');
+        }
+
+        log = new MessageLog(path, 1024, 0, 1.0);
+        Assert.assertEquals(List.of(new Message(1, 1, "kept", 100)), replay(log));
+        log.messageInserted(new Message(3, 1, "appended", 300));
+        log.close();
+        log = new MessageLog(path, 1024, 0, 1.0);
+        Assert.assertEquals(2, log.size());
+        log.close();
+    }
+
+    /**
+     * A MessageService given a log that disagrees with the database rewrites it. Once the service is closed cleanly,
+     * the next MessageService builds its indexes from the log without reading the message table.
+     */
+    @Test
+    public void messageServiceWarmsFromLog() throws IOException {
+        ConnectionUtil.resetTestDatabase();
+        Path path = folder.getRoot().toPath().resolve("messages.log");
+        MessageLog log = new MessageLog(path, 1024, 0, 1.0);
+        log.messageInserted(new Message(99, 1, "not in the database", 1));
+        AccountService accountService = new AccountService();
+        MessageService messageService = new MessageService(new MessageDAO(), accountService, null, log);
+        Assert.assertEquals(1, log.size());
+        Message inserted = messageService.insertMessage(new Message(1, "logged message", 1669947800));
+        messageService.updateMessage(1, new Message(1, "edited seed", 0));
+        messageService.close();
+
+        log = new MessageLog(path, 1024, 0, 1.0);
+        Assert.assertEquals(List.of(new Message(1, 1, "edited seed", 1669947792), inserted), replay(log));
+        MessageDAO unreadable = new MessageDAO() {
+            @Override
+            public boolean streamMessagesAfter(int after_id, Consumer<Message> consumer) {
+                throw new AssertionError("The message table should not be read");
+            }
+        };
+        messageService = new MessageService(unreadable, accountService, null, log);
+        Assert.assertTrue(messageService.getSearchIndex().isBuilt());
+        Assert.assertEquals(List.of(inserted), messageService.searchMessages("logged", 0, 10));
+        messageService.close();
+        accountService.close();
+    }
+
+    /**
+     * A log that was not closed cleanly may have missed a change committed to the database, even with the same
+     * messages in it, so it is rewritten from the database rather than trusted.
+     */
+    @Test
+    public void logNotClosedCleanlyIsRewritten() throws IOException {
+        ConnectionUtil.resetTestDatabase();
+        Path path = folder.getRoot().toPath().resolve("messages.log");
+        AccountService accountService = new AccountService();
+        MessageService messageService = new MessageService(new MessageDAO(), accountService, null,
+                new MessageLog(path, 1024, 0, 1.0));
+        messageService.close();
+        MessageLog log = new MessageLog(path, 1024, 0, 1.0);
+        messageService = new MessageService(new MessageDAO(), accountService, null, log);
+        // the database commits an edit, and the process stops before the log is told about it
+        new MessageDAO().updateMessage(1, new Message(1, "edit the log missed", 0));
+        log.close();
+
+        log = new MessageLog(path, 1024, 0, 1.0);
+        messageService = new MessageService(new MessageDAO(), accountService, null, log);
+        Assert.assertEquals(List.of(new Message(1, 1, "edit the log missed", 1669947792)), replay(log));
+        Assert.assertEquals(1, messageService.searchMessages("missed", 0, 10).size());
+        messageService.close();
+        accountService.close();
+    }
+
+    private static List<Message> replay(MessageLog log) {
+        List<Message> messages = new ArrayList<>();
+        log.replay(messages::add);
+        return messages;
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageOwnershipTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. A second account is registered, which does not own message 1.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        HttpRequest register = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"testuser2\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(register, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to PATCH and DELETE localhost:8080/messages/1 with the session token of an account that
+     * did not post message 1
+     * 
+     * Expected Response:
+     *  Status Code: 403
+     *  Message 1 is left unchanged
+     */
+    @Test
+    public void otherAccountCannotChangeMessage() throws IOException, InterruptedException {
+        String token = login("testuser2");
+
+        Assert.assertEquals(403, patch(token).statusCode());
+        Assert.assertEquals(403, delete(token).statusCode());
+
+        HttpRequest get = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse<String> response = webClient.send(get, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending http requests to PATCH and DELETE localhost:8080/messages/1 with the session token of the account that
+     * posted message 1
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the updated, then the deleted, message
+     */
+    @Test
+    public void authorCanChangeMessage() throws IOException, InterruptedException {
+        String token = login("testuser1");
+
+        HttpResponse<String> patched = patch(token);
+        Assert.assertEquals(200, patched.statusCode());
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792),
+                objectMapper.readValue(patched.body(), Message.class));
+
+        HttpResponse<String> deleted = delete(token);
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792),
+                objectMapper.readValue(deleted.body(), Message.class));
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        HttpRequest login = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"" + username + "\", " +
+                        "\"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(login, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue("X-Session-Token").orElseThrow();
+    }
+
+    private HttpResponse<String> patch(String token) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> delete(String token) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .header("Authorization", "Bearer " + token)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageResponseCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Reading a message again with the ETag it was sent with returns 304 and no body; any other ETag returns the
+     * message.
+     */
+    @Test
+    public void getMessageWithMatchingEtagNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get(null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> second = get(etag);
+        Assert.assertEquals(304, second.statusCode());
+        Assert.assertEquals("", second.body());
+        Assert.assertEquals(etag, second.headers().firstValue("ETag").orElseThrow());
+
+        HttpResponse<String> third = get("\"1-0\", " + etag);
+        Assert.assertEquals(304, third.statusCode());
+
+        HttpResponse<String> fourth = get("\"1-0\"");
+        Assert.assertEquals(200, fourth.statusCode());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.readValue(fourth.body(), Message.class));
+    }
+
+    /**
+     * Updating a message changes its ETag, so the old one no longer matches and the updated message is returned.
+     */
+    @Test
+    public void patchMessageChangesEtag() throws IOException, InterruptedException {
+        String etag = get(null).headers().firstValue("ETag").orElseThrow();
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = get(etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertNotEquals(etag, response.headers().firstValue("ETag").orElseThrow());
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * A restarted app starts its version counter again, but never hands out an ETag issued before the restart, so
+     * a client holding one is sent the message rather than a 304.
+     */
+    @Test
+    public void etagDoesNotMatchAfterRestart() throws IOException, InterruptedException {
+        String etag = get(null).headers().firstValue("ETag").orElseThrow();
+        app.stop();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpResponse<String> response = get(etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertNotEquals(etag, response.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * A deleted message is no longer returned, even to a client holding its ETag.
+     */
+    @Test
+    public void deleteMessageRemovesCachedBody() throws IOException, InterruptedException {
+        String etag = get(null).headers().firstValue("ETag").orElseThrow();
+        HttpRequest delete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(delete, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = get(etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("", response.body());
+        Assert.assertTrue(response.headers().firstValue("ETag").isEmpty());
+    }
+
+    private HttpResponse<String> get(String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"));
+        if(ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Service.MessageSearchIndex;
+
+public class MessageSearchIndexTest {
+
+    private static MessageSearchIndex build(String... texts) {
+        MessageSearchIndex index = new MessageSearchIndex();
+        Assert.assertTrue(index.ensureBuilt((Consumer<Message> consumer) -> {
+            for(int i = 0; i < texts.length; i++) {
+                consumer.accept(new Message(i + 1, 1, texts[i], 0));
+            }
+            return true;
+        }));
+        return index;
+    }
+
+    /**
+     * Only messages holding every query term match, and a message where a term is more of the text ranks higher.
+     */
+    @Test
+    public void matchesEveryTermAndRanks() {
+        MessageSearchIndex index = build(
+                "the cat sat on the mat",
+                "Cat!",
+                "a dog",
+                "cat cat cat and a dog");
+        Assert.assertArrayEquals(new int[]{2, 4, 1}, index.search("cat", 0, 10));
+        Assert.assertArrayEquals(new int[]{4}, index.search("dog CAT", 0, 10));
+        Assert.assertArrayEquals(new int[0], index.search("cat bird", 0, 10));
+        Assert.assertEquals(3, index.count("cat"));
+    }
+
+    /**
+     * Pages of a ranked result follow on from each other, and equal scores are ordered newest first.
+     */
+    @Test
+    public void pagesFollowOn() {
+        MessageSearchIndex index = build("same", "same", "same", "same", "same");
+        Assert.assertArrayEquals(new int[]{5, 4}, index.search("same", 0, 2));
+        Assert.assertArrayEquals(new int[]{3, 2}, index.search("same", 2, 2));
+        Assert.assertArrayEquals(new int[]{1}, index.search("same", 4, 2));
+        Assert.assertArrayEquals(new int[0], index.search("same", 5, 2));
+    }
+
+    /**
+     * Updates replace a message's postings and deletes remove them.
+     */
+    @Test
+    public void followsUpdatesAndDeletes() {
+        MessageSearchIndex index = build("first text", "second text");
+        index.messageUpdated(new Message(1, 1, "changed", 0));
+        index.messageDeleted(new Message(2, 1, "second text", 0));
+        index.messageInserted(new Message(3, 1, "third text", 0));
+        Assert.assertArrayEquals(new int[]{3}, index.search("text", 0, 10));
+        Assert.assertArrayEquals(new int[]{1}, index.search("changed", 0, 10));
+        Assert.assertEquals(2, index.size());
+    }
+
+    /**
+     * Changes are ignored before the index is built, since the build reads every message anyway.
+     */
+    @Test
+    public void changesBeforeBuildAreIgnored() {
+        MessageSearchIndex index = new MessageSearchIndex();
+        index.messageInserted(new Message(7, 1, "early", 0));
+        Assert.assertEquals(0, index.size());
+        Assert.assertFalse(index.ensureBuilt(consumer -> false));
+        Assert.assertFalse(index.isBuilt());
+        Assert.assertTrue(index.ensureBuilt(consumer -> true));
+        Assert.assertArrayEquals(new int[0], index.search("early", 0, 10));
+    }
+}
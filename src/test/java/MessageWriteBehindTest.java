@@ -0,0 +1,198 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Service.MessageWriteBehind;
+import Util.ConnectionUtil;
+
+public class MessageWriteBehindTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, reset the database and create a new messageDAO.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+    }
+
+    @After
+    public void tearDown() {
+        if(messageService != null) {
+            messageService.close();
+        }
+    }
+
+    /**
+     * Messages inserted concurrently with ack-after-commit are each given a distinct id, and are all in the database
+     * by the time they are returned.
+     */
+    @Test
+    public void concurrentInsertsAreCommittedBeforeReturning() throws Exception {
+        messageService = new MessageService(messageDAO, new AccountService(),
+                new MessageWriteBehind(messageDAO, 1000, 50, 1000, MessageWriteBehind.Durability.COMMIT));
+        ExecutorService clients = Executors.newFixedThreadPool(16);
+        List<Future<Message>> results = new ArrayList<>();
+        for(int i = 0; i < 200; i++) {
+            Message message = new Message(1, "write behind " + i, 1669947792 + i);
+            results.add(clients.submit(() -> messageService.insertMessage(message)));
+        }
+        Set<Integer> ids = new HashSet<>();
+        for(Future<Message> result : results) {
+            Message inserted = result.get(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(inserted);
+            ids.add(inserted.getMessage_id());
+            Assert.assertEquals(inserted, messageDAO.getMessageById(inserted.getMessage_id()));
+        }
+        clients.shutdown();
+        Assert.assertEquals(200, ids.size());
+        Assert.assertEquals(201, messageDAO.getAllMessages().size());
+    }
+
+    /**
+     * With ack-after-enqueue the message is returned with its id before it is written, can be read back by id
+     * straight away, and is in the database once the queue has been closed.
+     */
+    @Test
+    public void enqueuedMessageIsWrittenOnClose() {
+        messageService = new MessageService(messageDAO, new AccountService(),
+                new MessageWriteBehind(messageDAO, 1000, 50, 1000, MessageWriteBehind.Durability.ENQUEUE));
+        Message inserted = messageService.insertMessage(new Message(1, "queued", 1669947792));
+        Assert.assertEquals(new Message(2, 1, "queued", 1669947792), inserted);
+        Assert.assertEquals(inserted, messageService.getMessageById(2));
+
+        messageService.close();
+        Assert.assertEquals(inserted, messageDAO.getMessageById(2));
+    }
+
+    /**
+     * A message from an account that does not exist is rejected before it is queued.
+     */
+    @Test
+    public void unknownAuthorIsRejected() {
+        messageService = new MessageService(messageDAO, new AccountService(),
+                new MessageWriteBehind(messageDAO, 1000, 50, 1000, MessageWriteBehind.Durability.COMMIT));
+        Assert.assertNull(messageService.insertMessage(new Message(100, "nobody", 1669947792)));
+        Assert.assertEquals(0, messageService.getWriteBehind().getQueueSize());
+    }
+
+    /**
+     * When the writer cannot keep up and the queue is full, a submit is rejected once the offer timeout passes.
+     */
+    @Test
+    public void fullQueueRejects() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        MessageDAO stalledDAO = new MessageDAO() {
+            @Override
+            public boolean insertMessagesWithIds(List<Message> messages) {
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.insertMessagesWithIds(messages);
+            }
+        };
+        MessageWriteBehind writeBehind = new MessageWriteBehind(stalledDAO, 2, 1, 50,
+                MessageWriteBehind.Durability.ENQUEUE);
+        writeBehind.submit(new Message(1, "first", 1669947792));
+        writeBehind.submit(new Message(1, "second", 1669947792));
+        try {
+            writeBehind.submit(new Message(1, "third", 1669947792));
+            Assert.fail("Expected the full queue to reject the message");
+        } catch(RejectedExecutionException e) {
+            Assert.assertEquals(2, writeBehind.getQueueSize());
+        }
+        release.countDown();
+        writeBehind.close(10000);
+        Assert.assertEquals(3, stalledDAO.getAllMessages().size());
+    }
+
+    /**
+     * With ack-after-commit, a message whose batch does not commit within the commit timeout is rejected, and is
+     * still written once the writer catches up.
+     */
+    @Test
+    public void slowCommitRejects() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        MessageDAO stalledDAO = new MessageDAO() {
+            @Override
+            public boolean insertMessagesWithIds(List<Message> messages) {
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.insertMessagesWithIds(messages);
+            }
+        };
+        messageService = new MessageService(stalledDAO, new AccountService(),
+                new MessageWriteBehind(stalledDAO, 1000, 50, 1000, 50, MessageWriteBehind.Durability.COMMIT));
+        try {
+            messageService.insertMessage(new Message(1, "slow", 1669947792));
+            Assert.fail("Expected the slow commit to reject the message");
+        } catch(RejectedExecutionException e) {
+            Assert.assertEquals(1, messageService.getWriteBehind().getQueueSize());
+        }
+        release.countDown();
+        messageService.close();
+        Assert.assertEquals(new Message(2, 1, "slow", 1669947792), stalledDAO.getMessageById(2));
+    }
+
+    /**
+     * With ack-after-enqueue, an update that lands after the message is committed but before the insert reaches the
+     * caches is not undone when the insert catches up.
+     */
+    @Test
+    public void updateBeforeInsertCallbackIsKept() throws InterruptedException {
+        CountDownLatch committed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MessageDAO stalledDAO = new MessageDAO() {
+            @Override
+            public boolean insertMessagesWithIds(List<Message> messages) {
+                boolean inserted = super.insertMessagesWithIds(messages);
+                committed.countDown();
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return inserted;
+            }
+        };
+        messageService = new MessageService(stalledDAO, new AccountService(),
+                new MessageWriteBehind(stalledDAO, 1000, 50, 1000, MessageWriteBehind.Durability.ENQUEUE));
+        Assert.assertEquals(1, messageService.getAllMessagesFromUser(1).size());
+        Message inserted = messageService.insertMessage(new Message(1, "original", 1669947792));
+        Assert.assertTrue(committed.await(10, TimeUnit.SECONDS));
+
+        Message updated = messageService.updateMessage(inserted.getMessage_id(),
+                new Message(1, "updated", 1669947792));
+        Assert.assertEquals("updated", updated.getMessage_text());
+        release.countDown();
+        messageService.close();
+
+        List<Message> timeline = messageService.getAllMessagesFromUser(1);
+        Assert.assertEquals(2, timeline.size());
+        Assert.assertEquals(updated, timeline.get(1));
+        Assert.assertEquals(updated, messageService.getMessageById(inserted.getMessage_id()));
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/metrics after requesting a message
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text including the route's request count and latency, and the query's timing
+     */
+    @Test
+    public void metricsIncludeRouteAndQueryTimings() throws IOException, InterruptedException {
+        HttpRequest getMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        webClient.send(getMessageRequest, HttpResponse.BodyHandlers.ofString());
+        HttpRequest notFoundRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/no-such-route"))
+                .build();
+        webClient.send(notFoundRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+        String body = response.body();
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"messages/{message_id}\",status=\"200\"}"));
+        Assert.assertTrue(body.contains("http_request_duration_seconds{method=\"GET\",route=\"messages/{message_id}\",quantile=\"0.99\"}"));
+        Assert.assertTrue(body.contains("db_query_duration_seconds_count{sql=\"select * from message where message_id = ?\"}"));
+        Assert.assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"unmatched\",status=\"404\"}"));
+        Assert.assertTrue(body.contains("message_cache_misses "));
+    }
+}
@@ -0,0 +1,62 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.PasswordHasher;
+
+public class PasswordHasherTest {
+    PasswordHasher hasher;
+
+    @Before
+    public void setUp() {
+        hasher = new PasswordHasher(1000, 1, 4, 5000);
+    }
+
+    @After
+    public void tearDown() {
+        hasher.shutdown();
+    }
+
+    /**
+     * A hash verifies against the password it was made from, and no other.
+     */
+    @Test
+    public void hashVerifiesOnlyItsPassword() {
+        String stored = hasher.hash("password");
+        Assert.assertTrue(stored.startsWith("pbkdf2$1000$"));
+        Assert.assertTrue(hasher.verify("password", stored));
+        Assert.assertFalse(hasher.verify("passwore", stored));
+        Assert.assertFalse(hasher.needsRehash(stored));
+    }
+
+    /**
+     * Each hash has its own salt, so the same password hashes differently each time.
+     */
+    @Test
+    public void hashesAreSalted() {
+        Assert.assertNotEquals(hasher.hash("password"), hasher.hash("password"));
+    }
+
+    /**
+     * A plaintext password stored before hashing was introduced still verifies, and is due to be rehashed.
+     */
+    @Test
+    public void legacyPlaintextVerifies() {
+        Assert.assertTrue(hasher.verify("password", "password"));
+        Assert.assertFalse(hasher.verify("password", "passwore"));
+        Assert.assertTrue(hasher.needsRehash("password"));
+    }
+
+    /**
+     * A hash made with a different iteration count still verifies, and is due to be rehashed.
+     */
+    @Test
+    public void olderIterationCountNeedsRehash() {
+        PasswordHasher older = new PasswordHasher(500, 1, 4, 5000);
+        String stored = older.hash("password");
+        older.shutdown();
+        Assert.assertTrue(hasher.verify("password", stored));
+        Assert.assertTrue(hasher.needsRehash(stored));
+    }
+}
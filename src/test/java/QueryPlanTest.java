@@ -0,0 +1,66 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+
+public class QueryPlanTest {
+
+    /**
+     * Before every test, reset the database so that every migration has been applied, then add 100 accounts with 100
+     * messages each so that h2 plans against a table with rows in it. No query below names an index, so each plan is
+     * the choice of the planner.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement accounts = connection.prepareStatement("insert into account (username, password) " +
+                     "select concat('planuser', x), 'password' from system_range(1, 99)");
+             PreparedStatement messages = connection.prepareStatement("insert into message " +
+                     "(posted_by, message_text, time_posted_epoch) select a.account_id, 'message', x * 1000 + " +
+                     "a.account_id from account a, system_range(1, 100)")) {
+            accounts.executeUpdate();
+            messages.executeUpdate();
+        }
+    }
+
+    /**
+     * Looking up messages by poster should use the posted_by index, and read the rows already in time order.
+     */
+    @Test
+    public void messagesByUserUsesPostedByIndex() throws SQLException {
+        String plan = explain("select * from message where posted_by = 1 " +
+                "and time_posted_epoch >= -9223372036854775808 order by posted_by, time_posted_epoch");
+        Assert.assertTrue(plan, plan.contains("MESSAGE_POSTED_BY_TIME_IDX: POSTED_BY = 1"));
+        Assert.assertTrue(plan, plan.contains("index sorted"));
+    }
+
+    /**
+     * Looking up messages by time range should use the time_posted_epoch index, and read the rows already in order.
+     */
+    @Test
+    public void messagesBetweenUsesTimeIndex() throws SQLException {
+        String plan = explain("select * from message where time_posted_epoch >= 1 and time_posted_epoch < 2 " +
+                "order by time_posted_epoch, message_id limit 10");
+        Assert.assertTrue(plan, plan.contains("MESSAGE_TIME_POSTED_IDX: TIME_POSTED_EPOCH >= CAST(1 AS BIGINT)"));
+        Assert.assertTrue(plan, plan.contains("index sorted"));
+
+        plan = explain("select * from message where time_posted_epoch >= 1");
+        Assert.assertTrue(plan, plan.contains("MESSAGE_TIME_POSTED_IDX: TIME_POSTED_EPOCH >= CAST(1 AS BIGINT)"));
+    }
+
+    private String explain(String sql) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement("explain " + sql);
+             ResultSet rs = ps.executeQuery()) {
+            Assert.assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Service.RecentMessageWindow;
+
+public class RecentMessageWindowTest {
+
+    /**
+     * Only ranges that start inside the window are answered, in time order, and changes are reflected.
+     */
+    @Test
+    public void answersRangesInsideTheWindow() {
+        AtomicLong now = new AtomicLong(10000);
+        RecentMessageWindow window = new RecentMessageWindow(1000, 100, now::get);
+        Assert.assertNull(window.getMessagesBetween(null, 9500, 10000, 10));
+        Assert.assertTrue(window.ensureLoaded((since, consumer) -> {
+            Assert.assertEquals(9000L, (long) since);
+            consumer.accept(new Message(2, 1, "older", 9500));
+            consumer.accept(new Message(1, 2, "newer", 9900));
+            return true;
+        }));
+        window.messageInserted(new Message(3, 1, "same second", 9500));
+        window.messageInserted(new Message(4, 1, "too old to hold", 8000));
+
+        Assert.assertEquals(List.of(new Message(2, 1, "older", 9500), new Message(3, 1, "same second", 9500),
+                new Message(1, 2, "newer", 9900)), window.getMessagesBetween(null, 9000, Long.MAX_VALUE, 10));
+        Assert.assertEquals(List.of(new Message(1, 2, "newer", 9900)), window.getMessagesBetween(2, 9000, 10000, 10));
+        Assert.assertEquals(List.of(new Message(2, 1, "older", 9500)), window.getMessagesBetween(null, 9000, 9501, 1));
+        Assert.assertNull(window.getMessagesBetween(null, 8999, 10000, 10));
+
+        window.messageUpdated(new Message(1, 2, "edited", 9900));
+        window.messageDeleted(new Message(2, 1, "older", 9500));
+        Assert.assertEquals(List.of(new Message(3, 1, "same second", 9500), new Message(1, 2, "edited", 9900)),
+                window.getMessagesBetween(null, 9000, 10000, 10));
+    }
+
+    /**
+     * As time passes, old buckets are dropped and ranges reaching back to them go to the database.
+     */
+    @Test
+    public void oldBucketsAreDropped() {
+        AtomicLong now = new AtomicLong(10000);
+        RecentMessageWindow window = new RecentMessageWindow(1000, 100, now::get);
+        Assert.assertTrue(window.ensureLoaded((since, consumer) -> {
+            consumer.accept(new Message(1, 1, "old", 9050));
+            consumer.accept(new Message(2, 1, "new", 9950));
+            return true;
+        }));
+        now.set(10500);
+        Assert.assertNull(window.getMessagesBetween(null, 9000, 11000, 10));
+        Assert.assertEquals(9500, window.getCompleteFrom());
+        Assert.assertEquals(List.of(new Message(2, 1, "new", 9950)), window.getMessagesBetween(null, 9500, 11000, 10));
+        Assert.assertEquals(1, window.size());
+    }
+
+    /**
+     * Changes are ignored until the window has been loaded, since the load reads every recent message anyway.
+     */
+    @Test
+    public void changesBeforeLoadAreIgnored() {
+        RecentMessageWindow window = new RecentMessageWindow(1000, 100, () -> 10000);
+        window.messageInserted(new Message(1, 1, "early", 9900));
+        Assert.assertFalse(window.ensureLoaded((since, consumer) -> false));
+        Assert.assertTrue(window.ensureLoaded((since, consumer) -> true));
+        Assert.assertEquals(0, window.size());
+    }
+}
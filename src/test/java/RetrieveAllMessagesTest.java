@@ -99,6 +99,74 @@ public class RetrieveAllMessagesTest {
 
 
 
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=2 and then to the cursor it returns
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON represenation of each page of message objects, with the next cursor in X-Next-After-Id
+     */
+    @Test
+    public void getAllMessagesPaginated() throws IOException, InterruptedException {
+        for(int i = 2; i <= 3; i++){
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"test message " + i + "\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+
+        HttpRequest firstPageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=2"))
+                .build();
+        HttpResponse<String> firstPage = webClient.send(firstPageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, firstPage.statusCode());
+        List<Message> expectedFirstPage = new ArrayList<>();
+        expectedFirstPage.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedFirstPage.add(new Message(2, 1, "test message 2", 1669947792));
+        Assert.assertEquals(expectedFirstPage, objectMapper.readValue(firstPage.body(), new TypeReference<List<Message>>(){}));
+        Assert.assertEquals("2", firstPage.headers().firstValue("X-Next-After-Id").orElse(null));
+
+        HttpRequest secondPageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?after_id=2&limit=2"))
+                .build();
+        HttpResponse<String> secondPage = webClient.send(secondPageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, secondPage.statusCode());
+        List<Message> expectedSecondPage = new ArrayList<>();
+        expectedSecondPage.add(new Message(3, 1, "test message 3", 1669947792));
+        Assert.assertEquals(expectedSecondPage, objectMapper.readValue(secondPage.body(), new TypeReference<List<Message>>(){}));
+        Assert.assertFalse(secondPage.headers().firstValue("X-Next-After-Id").isPresent());
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages when the messages cannot be read
+     * 
+     * Expected Response:
+     *  Status Code: 500
+     *  Response Body: 
+     */
+    @Test
+    public void getAllMessagesReadFails() throws IOException, InterruptedException, SQLException {
+        try(Connection conn = ConnectionUtil.getConnection();
+            PreparedStatement ps = conn.prepareStatement("drop table message")) {
+            ps.executeUpdate();
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(500, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
+
+
     private void removeInitialMessage(){
         try {
                 Connection conn = ConnectionUtil.getConnection();
@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesByTimeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with since and until around the seeded message returns
+     * it, and a range after it returns nothing.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the messages posted in the range
+     */
+    @Test
+    public void getMessagesBetween() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?since=1669947792&until=1669947793");
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), actualResult);
+
+        Assert.assertEquals("[]", get("/messages?since=1669947793").body());
+        Assert.assertEquals("[]", get("/accounts/1/messages?until=1669947792").body());
+        Assert.assertEquals(400, get("/messages?since=1&after_id=1").statusCode());
+    }
+
+    /**
+     * A message posted just now is found by a range over the last minute, for all messages and for its account.
+     */
+    @Test
+    public void getRecentMessages() throws IOException, InterruptedException {
+        long now = System.currentTimeMillis() / 1000;
+        Assert.assertEquals("[]", get("/messages?since=" + (now - 60)).body());
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": " + now + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        List<Message> expectedResult = List.of(new Message(2, 1, "hello message", now));
+        Assert.assertEquals(expectedResult, objectMapper.readValue(get("/messages?since=" + (now - 60)).body(),
+                new TypeReference<List<Message>>(){}));
+        Assert.assertEquals(expectedResult, objectMapper.readValue(get("/accounts/1/messages?since=" + (now - 60)).body(),
+                new TypeReference<List<Message>>(){}));
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=MESSAGE%201 finds the seeded message, whatever
+     * the case of the query.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of a list containing the seeded message
+     */
+    @Test
+    public void searchFindsMessage() throws IOException, InterruptedException {
+        HttpResponse<String> response = search("MESSAGE%201");
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), actualResult);
+    }
+
+    /**
+     * Created, updated and deleted messages are reflected in later searches.
+     */
+    @Test
+    public void searchFollowsChanges() throws IOException, InterruptedException {
+        Assert.assertEquals("[]", search("hello").body());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        List<Message> found = objectMapper.readValue(search("hello").body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(2, 1, "hello message", 1669947792)), found);
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"goodbye\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals("[]", search("hello").body());
+        found = objectMapper.readValue(search("goodbye").body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(2, 1, "goodbye", 1669947792)), found);
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals("[]", search("goodbye").body());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search without a word to search for
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchWithoutQuery() throws IOException, InterruptedException {
+        Assert.assertEquals(400, search("%20!").statusCode());
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search"))
+                .build();
+        Assert.assertEquals(400, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<String> search(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=" + query))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
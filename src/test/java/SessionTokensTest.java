@@ -0,0 +1,47 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.SessionTokens;
+
+public class SessionTokensTest {
+
+    /**
+     * A token verifies to the account it was issued for.
+     */
+    @Test
+    public void issuedTokenVerifies() {
+        SessionTokens tokens = new SessionTokens(new byte[32], 60000, 100);
+        String token = tokens.issue(42);
+        Assert.assertEquals(Integer.valueOf(42), tokens.verify(token));
+        Assert.assertEquals(Integer.valueOf(42), tokens.verify(token));
+        Assert.assertEquals(1, tokens.getCacheSize());
+    }
+
+    /**
+     * A token with a changed account_id, a token signed with another key, and garbage are all refused.
+     */
+    @Test
+    public void forgedTokensAreRefused() {
+        SessionTokens tokens = new SessionTokens(new byte[32], 60000, 100);
+        String token = tokens.issue(42);
+        Assert.assertNull(tokens.verify("43" + token.substring(2)));
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        Assert.assertNull(tokens.verify(new SessionTokens(otherKey, 60000, 100).issue(42)));
+        Assert.assertNull(tokens.verify("not a token"));
+        Assert.assertNull(tokens.verify("42.1.!!!"));
+        Assert.assertEquals(0, tokens.getCacheSize());
+    }
+
+    /**
+     * A token is refused once its time to live has passed.
+     */
+    @Test
+    public void expiredTokenIsRefused() throws InterruptedException {
+        SessionTokens tokens = new SessionTokens(new byte[32], 50, 100);
+        String token = tokens.issue(42);
+        Assert.assertEquals(Integer.valueOf(42), tokens.verify(token));
+        Thread.sleep(100);
+        Assert.assertNull(tokens.verify(token));
+    }
+}
@@ -0,0 +1,50 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.StatementCache;
+
+public class StatementCacheTest {
+
+    /**
+     * A statement that has been closed refuses further use, while the next prepare of the same sql reuses the
+     * cached statement under a new, usable proxy.
+     */
+    @Test
+    public void closedStatementCannotBeUsed() throws SQLException {
+        try(Connection connection = DriverManager.getConnection("jdbc:h2:mem:statementCache")) {
+            StatementCache cache = new StatementCache(connection, 4);
+            PreparedStatement first = cache.prepare("select ?", Statement.NO_GENERATED_KEYS);
+            first.setInt(1, 1);
+            first.close();
+            Assert.assertTrue(first.isClosed());
+            try {
+                first.setInt(1, 2);
+                Assert.fail("Expected the closed statement to be refused");
+            } catch(SQLException e) {
+                Assert.assertEquals("Statement is closed", e.getMessage());
+            }
+
+            long hits = StatementCache.getHits();
+            PreparedStatement second = cache.prepare("select ?", Statement.NO_GENERATED_KEYS);
+            Assert.assertEquals(hits + 1, StatementCache.getHits());
+            Assert.assertNotSame(first, second);
+            Assert.assertFalse(second.isClosed());
+            second.setInt(1, 3);
+            try(ResultSet resultSet = second.executeQuery()) {
+                Assert.assertTrue(resultSet.next());
+                Assert.assertEquals(3, resultSet.getInt(1));
+            }
+            first.close();
+            Assert.assertFalse(second.isClosed());
+            second.close();
+            cache.close();
+        }
+    }
+}
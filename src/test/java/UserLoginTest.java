@@ -12,6 +12,7 @@ import org.junit.Test;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Controller.SocialMediaController;
+import DAO.AccountDAO;
 import Model.Account;
 import Util.ConnectionUtil;
 import io.javalin.Javalin;
@@ -119,4 +120,65 @@ public class UserLoginTest {
         Assert.assertEquals("", response.body().toString());
 
     }
+
+    /**
+     * A successful login returns a session token in the X-Session-Token header. Sent back as a bearer token, it lets
+     * the caller post as their own account only, and a tampered token is refused.
+     *
+     * Expected Response:
+     *  Status Code: 200 for the caller's own message, 403 for another account's, 401 for a tampered token
+     */
+    @Test
+    public void loginIssuesSessionToken() throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> loginResponse = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, loginResponse.statusCode());
+        String token = loginResponse.headers().firstValue("X-Session-Token").orElse(null);
+        Assert.assertNotNull(token);
+
+        Assert.assertEquals(200, postMessage(1, "Bearer " + token));
+        Assert.assertEquals(403, postMessage(2, "Bearer " + token));
+        Assert.assertEquals(401, postMessage(1, "Bearer " + token.substring(0, token.length() - 8) + "AAAAAAAA"));
+    }
+
+    /**
+     * An account inserted into the table after the username index was built, eg by another instance, can still
+     * log in.
+     */
+    @Test
+    public void loginAccountMissingFromIndex() throws IOException, InterruptedException {
+        Account inserted = new AccountDAO().insertAccount(new Account("testuser2", "password"));
+        Assert.assertNotNull(inserted);
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser2\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Account actualResult = objectMapper.readValue(response.body(), Account.class);
+        Assert.assertEquals(new Account(inserted.getAccount_id(), "testuser2", "password"), actualResult);
+    }
+
+    private int postMessage(int postedBy, String authorization) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
+                .build();
+        return webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
 }